@@ -0,0 +1,47 @@
+package search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Bayesian update of a resistance member's suspicions after a mission. Each update works on a fresh
+ * copy of the perspective, so that every invocation does the same work; {@link #copy()} measures the copy alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerspectiveBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    //the perspective of the last player, before any missions
+    private Perspective perspective;
+
+    //the first mission's team, which includes a spy
+    private char[] mission;
+
+    @Setup
+    public void setup() {
+        String all = Positions.players(players);
+        perspective = new Perspective(all.charAt(players - 1), all.toCharArray(), Positions.spies(players).length());
+        mission = all.substring(0, Teams.size(players, 1)).toCharArray();
+    }
+
+    @Benchmark
+    public Perspective copy() {
+        return new Perspective(perspective);
+    }
+
+    @Benchmark
+    public Perspective update() {
+        Perspective updated = new Perspective(perspective);
+        updated.update(mission, 1);
+        return updated;
+    }
+
+}
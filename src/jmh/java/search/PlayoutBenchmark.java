@@ -0,0 +1,51 @@
+package search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a single playout from the start of the game, as the search makes from each leaf of its tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayoutBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    //the start of the game, as searched by the spy agent
+    private CompactGameState start;
+
+    private Random random;
+
+    private Sampler sampler;
+
+    @Setup
+    public void setup() {
+        start = Positions.compactStart(players);
+        random = new SplitMix(1);
+        sampler = new Sampler();
+    }
+
+    /**
+     * Plays one game out from the start, picking each move with the opponent model's weights.
+     *
+     * @return the winning team
+     */
+    @Benchmark
+    public int playout() {
+        MCTS.State state = start.determinize(random, sampler);
+        while (!state.complete()) {
+            state.weightedMoves(sampler);
+            state.apply(state.move(sampler.sample(random)));
+        }
+        return state.winner();
+    }
+
+}
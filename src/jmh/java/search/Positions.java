@@ -0,0 +1,67 @@
+package search;
+
+/**
+ * The game positions the benchmarks start from. Players are named from 'A', the first few players are the spies, and
+ * we are player 'A', so the states are seen from a spy's point of view as in {@link SearchSpyAgent}.
+ */
+final class Positions {
+
+    /**
+     * NUM_SPIES[players - 5] is the number of spies in a game of that size.
+     */
+    private static final int[] NUM_SPIES = { 2, 2, 3, 3, 3, 4 };
+
+    private Positions() {}
+
+    /**
+     * @param players the number of players, from 5-10
+     * @return the player string
+     */
+    static String players(int players) {
+        return "ABCDEFGHIJ".substring(0, players);
+    }
+
+    /**
+     * @param players the number of players, from 5-10
+     * @return the spy string
+     */
+    static String spies(int players) {
+        return players(players).substring(0, NUM_SPIES[players - 5]);
+    }
+
+    /**
+     * Gives the start of the game, with the first resistance member nominating, so that the opponent model is used.
+     *
+     * @param players the number of players, from 5-10
+     * @return the state
+     */
+    static GameState start(int players) {
+        GameState state = new GameState(players(players), spies(players), 'A');
+        state.round(1);
+        state.phase(GameState.Phase.NOMINATION);
+        state.failures(0);
+        state.nominationAttempt(1);
+        state.traitors(0);
+        state.currentLeader(NUM_SPIES[players - 5]);
+        return state;
+    }
+
+    /**
+     * Gives the start of the game as modelled by {@link SearchSpyAgent}, with us nominating.
+     *
+     * @param players the number of players, from 5-10
+     * @return the state
+     */
+    static CompactGameState compactStart(int players) {
+        CompactGameState state = new CompactGameState(players(players), spies(players), 'A');
+        state.aggregate(true);
+        state.round(1);
+        state.phase(GameState.Phase.NOMINATION);
+        state.failures(0);
+        state.nominationAttempt(1);
+        state.traitors(0);
+        state.currentLeader(0);
+        return state;
+    }
+
+}
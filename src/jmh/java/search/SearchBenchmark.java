@@ -0,0 +1,77 @@
+package search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the number of playouts the search makes per second, using every core, from the start of 5, 7 and 10
+ * player games. Each invocation is one search with a fresh searcher, so that its tree starts empty; the playouts are
+ * counted with the search's {@link Telemetry}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    //how long each search runs for, in milliseconds
+    private static final long SEARCH_TIME = 100;
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    //the start of the game, as searched by the spy agent
+    private CompactGameState start;
+
+    //the searcher for the current invocation
+    private MCTS searcher;
+
+    /**
+     * The playouts made by the searches, reported by JMH as playouts per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Playouts {
+
+        public long playouts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            playouts = 0;
+        }
+
+    }
+
+    @Setup
+    public void setup() {
+        start = Positions.compactStart(players);
+    }
+
+    @Setup(Level.Invocation)
+    public void create() {
+        searcher = new MCTS(start, Runtime.getRuntime().availableProcessors(), MCTS.Parallelism.ROOT);
+        searcher.telemetry(true);
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdown() {
+        searcher.shutdown();
+    }
+
+    /**
+     * Searches for a move, counting the playouts made.
+     *
+     * @param playouts the count of playouts
+     * @return the move chosen
+     */
+    @Benchmark
+    public MCTS.Transition search(Playouts playouts) {
+        MCTS.Transition transition = searcher.transition(SEARCH_TIME);
+        playouts.playouts += searcher.telemetry().playouts();
+        return transition;
+    }
+
+}
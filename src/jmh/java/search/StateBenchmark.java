@@ -0,0 +1,46 @@
+package search;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations on {@link GameState} which the search makes at every step of a playout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    //a resistance member nominating, so that the opponent model is used
+    private GameState state;
+
+    @Setup
+    public void setup() {
+        state = Positions.start(players);
+    }
+
+    @Benchmark
+    public MCTS.State copy() {
+        return state.copy();
+    }
+
+    @Benchmark
+    public List<MCTS.Transition> transitions() {
+        return state.transitions();
+    }
+
+    @Benchmark
+    public Map<MCTS.Transition, Double> weightedTransitions() {
+        return state.weightedTransitions();
+    }
+
+}
@@ -3,10 +3,9 @@ package bayes;
 import core.Agent;
 
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This is the spy agent. It uses Bayesian inference to decide on transitions based on which options will minimise the
@@ -29,15 +28,15 @@ public class BayesSpyAgent implements Agent {
     //which members are spies
     private String spies;
 
-    //threading for updating resistance members bayesian probabilities in parallel - within game rules, since
-    // only used while our do_() method is being called and not any other time
-    private ExecutorService service;
+    //threading for scoring candidate teams in parallel - within game rules, since only used while our do_() method
+    // is being called and not any other time
+    private ForkJoinPool pool;
 
     /**
      * Creates a new spy agent.
      */
     BayesSpyAgent() {
-        service = Executors.newCachedThreadPool();
+        pool = new ForkJoinPool();
         initialised = false;
     }
 
@@ -58,7 +57,7 @@ public class BayesSpyAgent implements Agent {
         state.failures(failures);
 
         if (state.gameOver()) {
-            service.shutdownNow();
+            pool.shutdownNow();
         }
     }
 
@@ -103,10 +102,7 @@ public class BayesSpyAgent implements Agent {
 
         //pick the group which will induce the most uncertainty in resistance members if all
         // spies sabotage
-        return maximumUncertaintyChoice(
-                number, 0, 0,  new boolean[state.numberOfPlayers()],
-                new AbstractMap.SimpleEntry<String, Double>(null, Double.MAX_VALUE)
-        ).getKey();
+        return maximumUncertaintyChoice(number);
     }
 
     /**
@@ -185,6 +181,7 @@ public class BayesSpyAgent implements Agent {
         for (ResistancePerspective perspective : perspectives) {
 
             //record previous suspicions for each player so we can 'rollback' after simulation
+            double[] hypotheses = perspective.hypotheses();
             Map<ResistancePerspective.Player, Double> tmp = new HashMap<ResistancePerspective.Player, Double>(perspective.players().size());
             for (ResistancePerspective.Player player : perspective.players())
                 tmp.put(player, player.bayesSuspicion());
@@ -207,8 +204,7 @@ public class BayesSpyAgent implements Agent {
             }
 
             //rollback suspicion values
-            for (Map.Entry<ResistancePerspective.Player, Double> entry : tmp.entrySet())
-                entry.getKey().bayesSuspicion(entry.getValue());
+            perspective.hypotheses(hypotheses);
 
             if (!sabotaging)
                 break;
@@ -310,15 +306,54 @@ public class BayesSpyAgent implements Agent {
      * model of the resistance. We try to maximise this uncertainty to win the game as a spy. This is used when
      * nominating a team to go on a mission. Every mission contains us - not particularly because it is an advantage,
      * but since it may be considered suspicious not to choose us on our team.
+     * <p>
+     * Every candidate team is scored in parallel against snapshots of the resistance perspectives, and the best is
+     * picked by a parallel reduction.
+     *
+     * @param select the number of players to be in the mission
+     * @return the team which leaves the resistance least certain, if it is sabotaged
+     */
+    private String maximumUncertaintyChoice(int select) {
+        //don't want to nominate anything which won't score us a point
+        int sabotaged = numSabotagesRequiredForPoint();
+        List<String> teams = new ArrayList<String>();
+        candidates(select, 0, new boolean[state.numberOfPlayers()], sabotaged, teams);
+        if (teams.isEmpty()) {
+            //no team can score us a point - settle for any team with us in it
+            candidates(select, 0, new boolean[state.numberOfPlayers()], -1, teams);
+            sabotaged = 0;
+        }
+
+        //the perspectives as they stand, which every task can read without interfering with each other
+        List<ResistancePerspective.Snapshot> snapshots = new ArrayList<ResistancePerspective.Snapshot>(perspectives.size());
+        for (ResistancePerspective perspective : perspectives) {
+            snapshots.add(perspective.snapshot());
+        }
+
+        //this is what we try to minimise - this probability is the initial probability in the resistance perspective,
+        // we try to keep the probabilities close to this value
+        double unknown = (double) state.numberOfSpies() / (state.numberOfPlayers() - 1);
+
+        List<String> best = pool.invoke(
+                new Nomination(teams, 0, teams.size(), snapshots, state.players(), sabotaged, unknown)
+        ).getKey();
+
+        //equal values - pick any one of them
+        return best.get(ThreadLocalRandom.current().nextInt(best.size()));
+    }
+
+    /**
+     * Lists the teams we could nominate: every team of the right size with us on it.
      *
      * @param select the number of players to be in the mission
      * @param start recursive parameter - pass 0
-     * @param curr recursive parameter - pass 0
      * @param used recursive parameter - pass an array of false values of size {@link GameState#numberOfPlayers()}
+     * @param spies the number of spies the team must contain, or -1 for any number
+     * @param teams the list to add the teams to
      */
-    private Map.Entry<String, Double> maximumUncertaintyChoice(int select, int start, int curr, boolean[] used, final Map.Entry<String, Double> min) {
+    private void candidates(int select, int start, boolean[] used, int spies, List<String> teams) {
         //recursive base case
-        if (curr == select) {
+        if (select == 0) {
             //create the team string
             StringBuilder sb = new StringBuilder();
             for (int i = 0; i < used.length; ++i) {
@@ -328,95 +363,23 @@ public class BayesSpyAgent implements Agent {
             }
             //ignore if we're not in the team
             if (sb.toString().indexOf(me) == -1)
-                return min;
-
-            //create a fake mission
-            GameState.Mission fake = new GameState.Mission(String.valueOf(me), sb.toString());
-            int sabotaged = numberOfSpiesOnMission(fake);
-
-            //don't want to nominate anything which won't score us a point
-            if (sabotaged != numSabotagesRequiredForPoint()) {
-                return min;
-            }
-
-            //fake a mission
-            state.mission(fake);
-            state.mission().done(sabotaged);
-
-            //used to hold the total uncertainty
-            final AtomicDouble total = new AtomicDouble();
-
-            //this is what we try to minimise - this probability is the initial probability in the resistance perspective,
-            // we try to keep the probabilities close to this value
-            final double unknown = (double) state.numberOfSpies() / (state.numberOfPlayers() - 1);
-
-            //threading - execute all these in parallel to speed things up
-            Collection<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
-
-            //update suspicion values of resistance members
-            for (final ResistancePerspective perspective : perspectives) {
-                tasks.add(new Callable<Object>() {
-                    @Override
-                    public Object call() throws Exception {
-                        Map<ResistancePerspective.Player, Double> tmp = new HashMap<ResistancePerspective.Player, Double>(perspective.players().size());
-                        for (ResistancePerspective.Player player : perspective.players())
-                            tmp.put(player, player.bayesSuspicion());
-
-                        //shortcut for efficiency
-                        if (total.value > min.getValue()) return null;
-
-                        perspective.updateSuspicion();
-
-                        //sum up how uncertainty of players
-                        for (ResistancePerspective.Player player : perspective.players()) {
-                            if (!player.equals(perspective.me())) {
-                                total.increment(Math.pow(player.bayesSuspicion() - unknown, 2));
-
-                                //again, shortcut if we don't need to go any further
-                                if (total.value > min.getValue()) break;
-                            }
-                        }
-
-                        //reset suspicion
-                        for (Map.Entry<ResistancePerspective.Player, Double> entry : tmp.entrySet())
-                            entry.getKey().bayesSuspicion(entry.getValue());
-
-                        return null;
-                    }
-                });
-            }
+                return;
 
-            try {
-                //run them all in parallel
-                Collection<Future<Object>> futures = service.invokeAll(tasks);
-                for (Future<Object> future : futures) future.get();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
-            if (total.value < min.getValue()) {
-                //return this one as a better option
-                return new AbstractMap.SimpleEntry<String, Double>(sb.toString(), total.value);
-            } else if (total.value == min.getValue()) {
-                //equal values - return either one
-                if (Math.random() < 0.5) {
-                    return new AbstractMap.SimpleEntry<String, Double>(sb.toString(), total.value);
-                }
-            }
-
-            return min;
+            if (spies == -1 || numberOfSpiesOnMission(new GameState.Mission(String.valueOf(me), sb.toString())) == spies)
+                teams.add(sb.toString());
+            return;
         }
 
         //another base case - finished
-        if (start == state.numberOfPlayers()) return min;
+        if (start == state.numberOfPlayers()) return;
 
         //use the player at the start index in the team and recurse
         used[start] = true;
-        Map.Entry<String, Double> newMin = maximumUncertaintyChoice(select, start + 1, curr + 1, used, min);
+        candidates(select - 1, start + 1, used, spies, teams);
 
         //don't use the player at the start index in the team and recurse
         used[start] = false;
-        return maximumUncertaintyChoice(select, start + 1, curr, used, newMin);
+        candidates(select, start + 1, used, spies, teams);
     }
 
     /**
@@ -429,20 +392,113 @@ public class BayesSpyAgent implements Agent {
     }
 
     /**
-     * Mini-class for holding a double value that is accessed and incremented from multiple threads
+     * Scores a range of candidate teams, splitting it in half and scoring each half in parallel until the range is
+     * small enough, and gives the teams with the lowest score: the total squared distance of every resistance
+     * member's suspicions from the uninformed suspicion, if the team goes on the mission and is sabotaged. Every team
+     * sharing the lowest score is given, in order, so the result doesn't depend on how the work was split.
      */
-    private class AtomicDouble {
+    private static final class Nomination extends RecursiveTask<Map.Entry<List<String>, Double>> {
+
+        private static final long serialVersionUID = 1L;
+
+        //ranges of at most this many teams are scored without splitting them any further
+        private static final int THRESHOLD = 8;
+
+        //the candidate teams, and the range of them to score
+        private final List<String> teams;
+        private final int from;
+        private final int to;
+
+        //the resistance members' perspectives
+        private final List<ResistancePerspective.Snapshot> snapshots;
+
+        //all players, in the game's order
+        private final char[] players;
+
+        //the number of sabotages on the mission
+        private final int sabotaged;
+
+        //the uninformed suspicion of each player
+        private final double unknown;
+
+        /**
+         * @param teams the candidate teams
+         * @param from the index of the first team to score
+         * @param to the index after the last team to score
+         * @param snapshots the resistance members' perspectives
+         * @param players all players, in the game's order
+         * @param sabotaged the number of sabotages on the mission
+         * @param unknown the uninformed suspicion of each player
+         */
+        private Nomination(List<String> teams, int from, int to, List<ResistancePerspective.Snapshot> snapshots,
+                           char[] players, int sabotaged, double unknown) {
+            this.teams = teams;
+            this.from = from;
+            this.to = to;
+            this.snapshots = snapshots;
+            this.players = players;
+            this.sabotaged = sabotaged;
+            this.unknown = unknown;
+        }
 
-        //volatile so visible across threads quickly
-        private volatile double value = 0;
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Map.Entry<List<String>, Double> compute() {
+            if (to - from <= THRESHOLD) {
+                List<String> best = new ArrayList<String>();
+                double min = Double.MAX_VALUE;
+                for (int i = from; i < to; ++i) {
+                    double score = score(teams.get(i));
+                    if (score < min) {
+                        best.clear();
+                        min = score;
+                    }
+                    if (score == min) {
+                        best.add(teams.get(i));
+                    }
+                }
+                return new AbstractMap.SimpleImmutableEntry<List<String>, Double>(best, min);
+            }
+            int middle = (from + to) >>> 1;
+            Nomination left = new Nomination(teams, from, middle, snapshots, players, sabotaged, unknown);
+            left.fork();
+            Map.Entry<List<String>, Double> right =
+                    new Nomination(teams, middle, to, snapshots, players, sabotaged, unknown).compute();
+            return better(left.join(), right);
+        }
+
+        /**
+         * @param team a candidate team
+         * @return the total squared distance of every resistance member's suspicions from the uninformed suspicion, if
+         *         the team goes on the mission
+         */
+        private double score(String team) {
+            double total = 0;
+            for (ResistancePerspective.Snapshot snapshot : snapshots) {
+                double[] suspicions = snapshot.suspicions(team, sabotaged);
+                for (int i = 0; i < players.length; ++i) {
+                    if (players[i] != snapshot.me()) {
+                        total += Math.pow(suspicions[i] - unknown, 2);
+                    }
+                }
+            }
+            return total;
+        }
 
         /**
-         * Increments the value. Thread-safe.
-         *
-         * @param by the amount to increment by
+         * @param a the best teams in a range, and their score
+         * @param b the best teams in the range after it, and their score
+         * @return whichever teams have the lower score - all of them, in order, if the scores are equal
          */
-        private synchronized void increment(double by) {
-            value += by;
+        private static Map.Entry<List<String>, Double> better(Map.Entry<List<String>, Double> a,
+                                                              Map.Entry<List<String>, Double> b) {
+            if (a.getValue() < b.getValue()) return a;
+            if (b.getValue() < a.getValue()) return b;
+            List<String> both = new ArrayList<String>(a.getKey());
+            both.addAll(b.getKey());
+            return new AbstractMap.SimpleImmutableEntry<List<String>, Double>(both, a.getValue());
         }
 
     }
@@ -8,7 +8,9 @@ import java.util.*;
 /**
  * Represents the perspective of a resistance player. Holds suspicion values for each player,
  * which are updated after game events (e.g. voting, missions etc.). Primarily uses Bayesian
- * inference.
+ * inference: the probability of every possible set of spies (at most 10 choose 4 = 210 of them)
+ * is kept and updated exactly, and each player's suspicion is the total probability of the sets
+ * containing them.
  */
 public class ResistancePerspective {
 
@@ -24,6 +26,15 @@ public class ResistancePerspective {
     //all players not including me
     private final List<Player> others;
 
+    //all players, in the game's order - a player's index here is their bit in a bitmask of players
+    private final char[] ids;
+
+    //every hypothesis about who the spies are: the bitmask of each possible set of spies not including me...
+    private final int[] sets;
+
+    //...and the probability of each
+    private final double[] hypotheses;
+
     /**
      * Creates a new perspective of the game from the point of view of a resistance player
      *
@@ -49,6 +60,22 @@ public class ResistancePerspective {
                 others.add(player);
             }
         }
+
+        //every set of spies not including me is equally likely to start with
+        ids = _players.toCharArray();
+        int spies = _state.numberOfSpies();
+        List<Integer> sets = new ArrayList<Integer>();
+        for (int set = (1 << spies) - 1; set < 1 << ids.length; set = nextCombination(set)) {
+            if ((set & (1 << _players.indexOf(me.id()))) == 0) {
+                sets.add(set);
+            }
+        }
+        this.sets = new int[sets.size()];
+        this.hypotheses = new double[sets.size()];
+        for (int i = 0; i < this.sets.length; ++i) {
+            this.sets[i] = sets.get(i);
+            this.hypotheses[i] = 1.0 / this.sets.length;
+        }
     }
 
     /**
@@ -81,48 +108,42 @@ public class ResistancePerspective {
     }
 
     /**
-     * Updates the suspicion for each player based on the current round evidence - i.e. number of sabotages.
+     * Updates the suspicion for each player based on the current round evidence - i.e. number of sabotages. Every
+     * hypothesis is weighted by the probability of the sabotages given that hypothesis (Bayes' rule), and each
+     * player's suspicion is then the total probability of the hypotheses in which they are a spy.
      */
     public void updateSuspicion() {
-        //remove line below - still extremely useful to update probabilities when mission succeeds, since
-        // if no sabotages occur it is more likely that there were no spies on the team
-        //if (traitors == 0) return;
-
-        //need a temporary map to store new probabilities, since need all spy probabilities to remain constant while
-        // computing the new ones
-        Map<Player, Double> updated = new HashMap<Player, Double>(players().size());
-
-        //need to create new list to hold the collection of players since need to access by index - bit annoying
-        List<Player> players = new LinkedList<Player>(players());
-
-        //P(B) - probability of cards being dealt - is constant for all players so can compute once
-        //edit - don't need to spend resources on calculating this, can just normalise each probability at the end
-        //double pb = computeProbabilityOfMissionSabotages(players);
-
-        for (Player p : players()) {
-            //P(A) - original probability of being a spy
-            double pa = p.bayesSuspicion();
-
-            //P(B|A) - probability of cards being dealt given that the player is a spy - just temporarily set
-            // spy probability of player to 1
-            p.bayesSuspicion(1.0);
-            double pba = computeProbabilityOfMissionSabotages(players);
-            p.bayesSuspicion(pa);
-
-            //add new probability to map
-            updated.put(p, bayes(pa, 1.0, pba));
+        //still extremely useful to update probabilities when mission succeeds, since if no sabotages occur it is more
+        // likely that there were no spies on the team
+        if (update(sets, hypotheses, mask(state.mission().team()), state.mission().traitors())) {
+            marginals();
         }
+    }
 
-        double total = 0.0;
-        for (Map.Entry<Player, Double> entry : updated.entrySet()) {
-            total += entry.getValue();
-        }
+    /**
+     * @return a copy of the probability of each hypothesis, which can be given to {@link #hypotheses(double[])} to
+     *         roll back later updates
+     */
+    public double[] hypotheses() {
+        return hypotheses.clone();
+    }
 
-        //computation is done - update probabilities from map
-        for (Map.Entry<Player, Double> entry : updated.entrySet()) {
-            double newValue = entry.getValue() * state.numberOfSpies() / total;
-            entry.getKey().bayesSuspicion(newValue);
-        }
+    /**
+     * Replaces the probability of each hypothesis, and each player's suspicion along with it.
+     *
+     * @param hypotheses the probabilities, as given by {@link #hypotheses()}
+     */
+    public void hypotheses(double[] hypotheses) {
+        System.arraycopy(hypotheses, 0, this.hypotheses, 0, this.hypotheses.length);
+        marginals();
+    }
+
+    /**
+     * @return an immutable copy of the current hypotheses, which can be read from any thread while this perspective
+     *         carries on being updated
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(me.id(), ids, sets, hypotheses.clone());
     }
 
     /**
@@ -133,137 +154,184 @@ public class ResistancePerspective {
         return String.format("ResistancePerspective{me=%s, players=%s}", me, players);
     }
 
-
     /**
-     * Computes the update probability given evidence using Bayes rule.
-     *
-     * @param pa P(A): the original probability, in this case the probability that the player is a spy
-     * @param pb P(B): the probability of the event providing new evidence to have occurred, in this case the
-     *           probability of the number of sabotages occurring
-     * @param pba P(B|A): the probability of event B, given event A - in this case the probability of the number of
-     *            sabotages occurring, given that the player is a spy
-     * @return the updated probability of event A given evidence B - that is, P(A|B)
+     * Sets each player's suspicion to the total probability of the hypotheses in which they are a spy.
      */
-    private double bayes(double pa, double pb, double pba) {
-        if (pa == 0 || pba == 0) return 0;
-        return pa * pba / pb;
+    private void marginals() {
+        double[] marginals = marginals(ids.length, sets, hypotheses);
+        for (int i = 0; i < ids.length; ++i) {
+            players.get(ids[i]).bayesSuspicion(marginals[i]);
+        }
     }
 
+    /**
+     * @param team some players
+     * @return the bitmask of the players' indices in {@link #ids}
+     */
+    private int mask(Collection<Character> team) {
+        int mask = 0;
+        for (int i = 0; i < ids.length; ++i) {
+            if (team.contains(ids[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
 
     /**
-     * This method is for computing P(B) and P(B|A): it calculates the probability of the number of sabotages that
-     * happened on this mission. It does this by iterating over all combinations of spies on the team, and within that
-     * team, all combinations of each spy choosing to sabotage or not. This sounds computationally expensive but is
-     * feasible for this game: with 10 players there are 4 spies, so there are (10 choose 4) possible combinations
-     * of spies and up to 2^4 combinations for which spies choose to sabotage/not sabotage a mission: resulting in a
-     * total of 3360 possibilities as an absolute maximum.
+     * Gives the probability of a number of sabotages, given the number of spies on the mission. Each spy on the
+     * mission sabotages independently, with the probability given by {@link Player#likelihoodToBetray(Collection)}.
      *
-     * @param players the list of players in the game
-     * @return the probability of the mission resulting in the number of sabotages that occurred
+     * @param onMission the number of spies on the mission
+     * @param traitors the number of sabotages
+     * @return the probability of the sabotages
      */
-    private double computeProbabilityOfMissionSabotages(List<Player> players) {
-        return computeProbabilityOfMissionSabotages(players, 0, 0, new boolean[players.size()]);
+    private static double likelihood(int onMission, int traitors) {
+        if (traitors > onMission) {
+            return 0;
+        }
+        double betray = betrayal(onMission);
+        //the number of ways to choose which spies sabotaged
+        double ways = 1;
+        for (int i = 1; i <= traitors; ++i) {
+            ways = ways * (onMission - traitors + i) / i;
+        }
+        return ways * Math.pow(betray, traitors) * Math.pow(1 - betray, onMission - traitors);
     }
 
     /**
-     * The recursive method for {@link #computeProbabilityOfMissionSabotages(List)}.
+     * Weights each hypothesis by the probability of a mission's sabotages given that hypothesis, then normalises them.
      *
-     * @param players the list of players
-     * @param start recursive parameter to help iterate over combinations - pass 0
-     * @param curr recursive parameter to help iterate over combinations - pass 0
-     * @param spy recursive parameter to help iterate over combinations - pass a boolean array filled with the
-     *             value {@code false} of size {@link GameState#numberOfPlayers()}
-     * @return the probability of the mission resulting in the number of sabotages that occurred
+     * @param sets the bitmask of each set of spies
+     * @param hypotheses the probability of each set of spies, updated in place
+     * @param team the bitmask of the players on the mission
+     * @param traitors the number of sabotages
+     * @return false (leaving the hypotheses unchanged) if the sabotages are impossible under every hypothesis
      */
-    private double computeProbabilityOfMissionSabotages(List<Player> players, int start, int curr, boolean[] spy) {
-        //base case - have reached the correct combination size
-        if (curr == state.numberOfSpies()) {
-            //create list of spies and then iterate over all possibilities for which spies did/didn't sabotage
-            List<Player> spies = new LinkedList<Player>();
-            for (int i = 0; i < players.size(); ++i) if (spy[i]) spies.add(players.get(i));
-            return sumSabotageCombinations(spies, 0, 0, new boolean[spies.size()]);
+    private static boolean update(int[] sets, double[] hypotheses, int team, int traitors) {
+        double[] likelihoods = new double[sets.length];
+        double total = 0.0;
+        for (int i = 0; i < sets.length; ++i) {
+            likelihoods[i] = hypotheses[i] * likelihood(Integer.bitCount(sets[i] & team), traitors);
+            total += likelihoods[i];
+        }
+        if (total == 0) {
+            //the evidence can't have come from the opponent model, so learn nothing from it rather than dividing by zero
+            return false;
+        }
+        for (int i = 0; i < sets.length; ++i) {
+            hypotheses[i] = likelihoods[i] / total;
         }
+        return true;
+    }
 
-        //base case - ensure not over the array size
-        if (start == players.size()) return 0;
+    /**
+     * @param players the number of players
+     * @param sets the bitmask of each set of spies
+     * @param hypotheses the probability of each set of spies
+     * @return the total probability of the sets containing each player, by index - exactly 1 for a player in every
+     *         possible set and exactly 0 for a player in none, whatever the rounding error in the total
+     */
+    private static double[] marginals(int players, int[] sets, double[] hypotheses) {
+        double[] marginals = new double[players];
+        //the players in every possible set, and in any possible set
+        int all = ~0;
+        int any = 0;
+        for (int i = 0; i < sets.length; ++i) {
+            if (hypotheses[i] == 0) {
+                continue;
+            }
+            all &= sets[i];
+            any |= sets[i];
+            for (int rest = sets[i]; rest != 0; rest &= rest - 1) {
+                marginals[Integer.numberOfTrailingZeros(rest)] += hypotheses[i];
+            }
+        }
+        for (int i = 0; i < players; ++i) {
+            if ((all & (1 << i)) != 0) {
+                marginals[i] = 1;
+            } else if ((any & (1 << i)) == 0) {
+                marginals[i] = 0;
+            }
+        }
+        return marginals;
+    }
 
-        //recurse - set the player in the first index to be a spy
-        spy[start] = true;
-        double tmp = computeProbabilityOfMissionSabotages(players, start + 1, curr + 1, spy);
+    /**
+     * @param set a bitmask
+     * @return the next larger bitmask with the same number of bits set (Gosper's hack)
+     */
+    private static int nextCombination(int set) {
+        int lowest = set & -set;
+        int ripple = set + lowest;
+        return ripple | (((set ^ ripple) >>> 2) / lowest);
+    }
 
-        //recurse - set the player in the first index to be a true resistance member
-        spy[start] = false;
-        return tmp + computeProbabilityOfMissionSabotages(players, start + 1, curr, spy);
+    /**
+     * @param onMission the number of spies on a mission, at least one
+     * @return the probability that each of them sabotages it
+     */
+    private static double betrayal(int onMission) {
+        if (onMission == 1) return 0.95;
+        return 1.0 / onMission;
     }
 
     /**
-     * If a spy is in a team, it has some probability to sabotage the mission. This method iterates over a given
-     * spy combination and considers all combinations of which spies sabotaged/didn't sabotage. It sums the probabilities
-     * and returns the total probability for the given number of sabotages to have occurred in a mission, assuming a certain
-     * spy combination.
-     *
-     * @param spies the assumed list of spies (of size {@link GameState#numberOfSpies()})
-     * @param start recursive parameter to help iterate over combinations - pass 0
-     * @param curr recursive parameter to help iterate over combinations - pass 0
-     * @param sabotaged recursive parameter to help iterate over combinations - pass a boolean array filled with the
-     *                     value {@code false} of size {@link GameState#numberOfSpies()}
-     * @return the total probability for a given set of spies to have sabotaged the number of times that the mission
-     * was sabotaged
+     * An immutable copy of a perspective's hypotheses, for asking what the perspective would think after a mission
+     * without changing it. Snapshots are safe to share between threads.
      */
-    private double sumSabotageCombinations(List<Player> spies, int start, int curr, boolean sabotaged[]) {
-        //base case - have reached the correct combination size
-        if (curr == state.mission().traitors()) {
-
-            //ensure that the number of sabotages in this combination caused by spies IN THE TEAM corresponds to the
-            // number of sabotages that actually occurred
-            int numSabotaged = 0;
-            for (int i = 0; i < sabotaged.length; ++i) {
-                Player p = spies.get(i);
-                if (state.mission().team().contains(p.id()) && sabotaged[i])
-                    numSabotaged++;
-            }
-            if (numSabotaged != state.mission().traitors()) return 0;
-
-            List<Player> spiesOnMission = new LinkedList<Player>();
-            for (Player p : spies) if (state.mission().team().contains(p.id())) spiesOnMission.add(p);
-
-            double total = 1.0;
-            for (int i = 0; i < sabotaged.length; ++i) {
-                Player p = spies.get(i);
-                if (state.mission().team().contains(p.id())) {
-                    if (sabotaged[i]) {
-                        //spy on mission and spy sabotaged
-                        total *= p.bayesSuspicion() * p.likelihoodToBetray(spiesOnMission);
-                    } else {
-                        //spy on mission but didn't sabotage
-                        total *= p.bayesSuspicion() * (1 - p.likelihoodToBetray(spiesOnMission));
-                    }
-                } else {
-                    //spy not on mission
-                    total *= p.bayesSuspicion();
-                }
-            }
+    public static final class Snapshot {
 
-            for (Player p : players()) {
-                if (!spies.contains(p)) {
-                    //not a spy
-                    total *= (1 - p.bayesSuspicion());
-                }
-            }
+        //the identifier of the perspective's owner
+        private final char me;
+
+        //all players, in the game's order, and the bitmask of each set of spies - both shared with the perspective,
+        // which never modifies them
+        private final char[] ids;
+        private final int[] sets;
 
-            return total;
+        //the probability of each set of spies when the snapshot was taken
+        private final double[] hypotheses;
+
+        /**
+         * @param me the identifier of the perspective's owner
+         * @param ids all players, in the game's order
+         * @param sets the bitmask of each set of spies
+         * @param hypotheses the probability of each set of spies, which must not be modified from now on
+         */
+        private Snapshot(char me, char[] ids, int[] sets, double[] hypotheses) {
+            this.me = me;
+            this.ids = ids;
+            this.sets = sets;
+            this.hypotheses = hypotheses;
         }
 
-        //base case - ensure not over the array size
-        if (start == sabotaged.length) return 0;
+        /**
+         * @return the identifier of the perspective's owner
+         */
+        public char me() {
+            return me;
+        }
 
-        //recurse - set the spy in the start index to have sabotaged
-        sabotaged[start] = true;
-        double tmp = sumSabotageCombinations(spies, start + 1, curr + 1, sabotaged);
+        /**
+         * Works out the suspicion of each player if a mission were to go ahead, without changing the snapshot.
+         *
+         * @param team the players on the mission
+         * @param traitors the number of sabotages
+         * @return the suspicion of each player afterwards, in the game's order (as in {@link GameState#players()})
+         */
+        public double[] suspicions(String team, int traitors) {
+            int mask = 0;
+            for (int i = 0; i < ids.length; ++i) {
+                if (team.indexOf(ids[i]) != -1) {
+                    mask |= 1 << i;
+                }
+            }
+            double[] posterior = hypotheses.clone();
+            update(sets, posterior, mask, traitors);
+            return marginals(ids.length, sets, posterior);
+        }
 
-        //recurse - set the spy in the start index not to have sabotaged
-        sabotaged[start] = false;
-        return tmp + sumSabotageCombinations(spies, start + 1, curr, sabotaged);
     }
 
     public class Player {
@@ -376,6 +444,9 @@ public class ResistancePerspective {
         }
 
         /**
+         * Sets the probability that this player is a spy. The probabilities of the hypotheses are left alone, so the
+         * next update works this out afresh - use {@link #hypotheses(double[])} to roll back an update.
+         *
          * @param _bayesSuspicion sets the new probability that this player is a spy
          */
         public void bayesSuspicion(double _bayesSuspicion) {
@@ -390,8 +461,7 @@ public class ResistancePerspective {
          * @return the likelihood that the player will betray the mission
          */
         public double likelihoodToBetray(Collection<Player> spiesOnMission) {
-            if (spiesOnMission.size() == 1) return 0.95;
-            return 1.0 / spiesOnMission.size();
+            return betrayal(spiesOnMission.size());
         }
 
         /**
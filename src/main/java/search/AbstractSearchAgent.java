@@ -0,0 +1,277 @@
+package search;
+
+import core.Agent;
+
+import java.io.PrintStream;
+
+/**
+ * The parts of {@link SearchSpyAgent} and {@link SearchResistanceAgent} common to both roles: setting up the searcher,
+ * keeping the game state and the searcher's tree in step with the moves observed, and searching for our nominations
+ * and votes. Subclasses give the state from their own perspective and handle the missions themselves.
+ */
+public abstract class AbstractSearchAgent implements Agent {
+
+    //we only have one second to make our move... This is the most time we search for, although the search stops
+    // early once the best move is clear (or immediately, if there is only one move).
+    private static final int DELAY_TIME = 900;
+
+    //the default number of playouts to search for in the background while other players are making their moves
+    private static final long PONDER_PLAYOUTS = 20000;
+
+    //the number of states whose statistics are shared between transposed paths, over all of the search trees
+    private static final int TRANSPOSITIONS = 1 << 16;
+
+    //progressive widening: a state visited n times has its WIDENING_COEFFICIENT * n^WIDENING_EXPONENT likeliest moves
+    // searched, as nominations in larger games have hundreds of possibilities
+    private static final double WIDENING_COEFFICIENT = 2;
+    private static final double WIDENING_EXPONENT = 0.5;
+
+    //how strongly the search explores moves the opponent model thinks likely
+    private static final double EXPLORATION = 1.5;
+
+    //whether the agent has been started yet.
+    private boolean initialised;
+
+    //the game state from our perspective
+    private CompactGameState state;
+
+    //the searcher, used to pick our moves.
+    private MCTS searcher;
+
+    //the mission currently being voted on or carried out, with players in the same order as the player string
+    private String lastMission;
+
+    //the seed for the searcher's random number generators
+    private final long seed;
+
+    //the number of playouts to ponder for after each move by another player
+    private long ponder;
+
+    //where to log a record of each search, or null not to
+    private PrintStream log;
+
+    /**
+     * Creates a new agent whose searches are seeded from the given seed.
+     *
+     * @param seed the seed for the search
+     */
+    protected AbstractSearchAgent(long seed) {
+        this.seed = seed;
+        this.ponder = PONDER_PLAYOUTS;
+    }
+
+    /**
+     * Sets how much searching is done in the background between our own decisions. After each move by another
+     * player, the searcher keeps searching from the new state until it has made the given number of playouts or the
+     * next move arrives; the work on the move which actually happens is kept for our next decision.
+     *
+     * @param playouts the number of playouts to ponder for, or zero not to ponder at all
+     */
+    public void ponder(long playouts) {
+        this.ponder = playouts;
+    }
+
+    /**
+     * Logs a record of each of our decisions: the move chosen and the search's {@link Telemetry}. Measuring the search
+     * slows it down a little, so this is off unless a stream is given.
+     *
+     * @param log the stream to log to, or {@code null} not to log
+     */
+    public void log(PrintStream log) {
+        this.log = log;
+        if (searcher != null) {
+            searcher.telemetry(log != null);
+        }
+    }
+
+    /**
+     * Creates the game state at the start of the game, from our perspective.
+     *
+     * @param name our name
+     * @param players all players
+     * @param spies the spies, or one question mark for each spy if we don't know who they are
+     * @return the state
+     */
+    protected abstract CompactGameState state(String name, String players, String spies);
+
+    /**
+     * @return how the searcher's worker threads share the search
+     */
+    protected abstract MCTS.Parallelism parallelism();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_status(String name, String players, String spies, int mission, int failures) {
+        if (!initialised) {
+            state = state(name, players, spies);
+            searcher = new MCTS(state, Runtime.getRuntime().availableProcessors(), parallelism(), seed);
+            searcher.transpositions(TRANSPOSITIONS);
+            searcher.widening(WIDENING_COEFFICIENT, WIDENING_EXPONENT);
+            searcher.policy(new SelectionPolicy.PUCT(EXPLORATION));
+            searcher.telemetry(log != null);
+            initialised = true;
+        }
+        //update the state
+        state.round(mission);
+        state.failures(failures);
+        state.nominationAttempt(1);
+        state.traitors(0);
+        state.phase(GameState.Phase.NOMINATION);
+
+        //shut down the searcher so that the program can end (otherwise has random thread waiting so program doesn't
+        // terminate)
+        if (state.complete() && searcher != null) {
+            searcher.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String do_Nominate(int number) {
+        //update game state
+        state.phase(GameState.Phase.NOMINATION);
+        state.currentLeader(state.players().indexOf(state.me()));
+
+        //perform the move
+        return ((ResistanceTransition.Nomination) decide()).selection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_ProposedMission(String leader, String mission) {
+        //update game state - the searcher may have guessed a different leader, so it is given the state as it really
+        // is (keeping its trees if the guess was right) before the nomination is applied
+        state.currentLeader(state.players().indexOf(leader));
+        searcher.state(state);
+        lastMission = canonical(mission);
+        observe(new ResistanceTransition.Nomination(lastMission));
+        startPondering();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean do_Vote() {
+        //perform the move
+        return ((ResistanceTransition.Vote) decide()).yes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_Votes(String yays) {
+        //the search models our vote, followed by the number of other players voting yes
+        int others = 0;
+        for (char c : yays.toCharArray()) {
+            if (c != state.me()) {
+                ++others;
+            }
+        }
+        observe(new ResistanceTransition.Vote(yays.indexOf(state.me()) != -1));
+        observe(new ResistanceTransition.Votes(others));
+        startPondering();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_Mission(String mission) {
+        lastMission = canonical(mission);
+        //update state - this should already match the state reached by the votes
+        state.nominationAttempt(1);
+        state.mission(lastMission);
+        state.phase(GameState.Phase.MISSION);
+        state.currentPlayer(state.players().indexOf(state.me()));
+        state.traitors(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String do_Accuse() {
+        //don't bother
+        return "";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_Accusation(String accuser, String accused) {
+        //ignore
+    }
+
+    /**
+     * Searches for our best move from the current state, and logs it if logging is on.
+     *
+     * @return the move chosen
+     */
+    protected MCTS.Transition decide() {
+        searcher.state(state);
+        MCTS.Transition transition = searcher.transition(DELAY_TIME);
+        if (log != null) {
+            log.println(String.format("%c %s %s", state.me(), transition, searcher.telemetry()));
+        }
+        return transition;
+    }
+
+    /**
+     * Applies a transition which was taken in the game to our state, and lets the searcher move its tree down to
+     * the matching subtree so the statistics gathered so far are reused in the next search.
+     *
+     * @param transition the transition which was observed
+     */
+    protected void observe(MCTS.Transition transition) {
+        searcher.advance(transition);
+        state.transition(transition);
+    }
+
+    /**
+     * Searches in the background until the next move arrives, or the ponder budget is used up.
+     */
+    protected void startPondering() {
+        searcher.ponder(ponder);
+    }
+
+    /**
+     * @return the game state from our perspective
+     */
+    CompactGameState state() {
+        return state;
+    }
+
+    /**
+     * @return the searcher, or {@code null} if the agent hasn't been started yet
+     */
+    MCTS searcher() {
+        return searcher;
+    }
+
+    /**
+     * The search generates teams with players in the same order as the player string, but other agents may nominate
+     * them in any order. This puts a team into the search's order so that it matches the tree.
+     *
+     * @param mission the players on a mission
+     * @return the same players, ordered as in the player string
+     */
+    private String canonical(String mission) {
+        StringBuilder sb = new StringBuilder(mission.length());
+        for (char c : state.players().toCharArray()) {
+            if (mission.indexOf(c) != -1) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
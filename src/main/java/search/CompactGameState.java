@@ -0,0 +1,1217 @@
+package search;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compact version of {@link GameState}, with the same rules and opponent model. Players, spies and the mission are
+ * held as bitmasks over player indices, and the suspicions of every resistance member are held in one flat array, so
+ * copying the state is a single array clone and playouts allocate very little.
+ * <p>
+ * A state may also be created for a resistance member, who doesn't know the spies (a hidden state). The spies are then
+ * only filled in by {@link #determinize(Random, Sampler)}, and every other player's move is a chance move, so that
+ * the moves possible from a state never depend on who the spies are.
+ */
+public class CompactGameState implements MCTS.State {
+
+    /**
+     * The nomination weights of resistance leaders, shared by every state.
+     */
+    private static final PolicyCache POLICIES = new PolicyCache(1 << 12);
+
+    /**
+     * All players in the game. The index of a player in this string is its bit in each bitmask.
+     */
+    private final String players;
+
+    /**
+     * The bitmask of spies in the game, or in a hidden state, the spies assumed by the current determinization.
+     */
+    private int spies;
+
+    /**
+     * The number of spies in the game.
+     */
+    private final int numSpies;
+
+    /**
+     * Whether I am a resistance member who doesn't know the spies.
+     */
+    private final boolean hidden;
+
+    /**
+     * My index in the player string.
+     */
+    private final int me;
+
+    /**
+     * Maps each player index to the row holding that player's perspective in {@link #suspicion}, or -1 for spies.
+     * Shared between copies since it never changes.
+     */
+    private final int[] rows;
+
+    /**
+     * Holds the current game phase.
+     */
+    private GameState.Phase phase;
+
+    /**
+     * The index of the player who 'chooses' a transition next, in the voting and mission stages.
+     */
+    private int currentPlayer;
+
+    /**
+     * The index of the current leader, i.e. who is proposing the current mission.
+     */
+    private int currentLeader;
+
+    /**
+     * The current round of the game, ranging from 1..6 (where 6 means the game has ended).
+     */
+    private int round;
+
+    /**
+     * The number of missions that have been sabotaged.
+     */
+    private int failures;
+
+    /**
+     * The attempt number for mission/team nomination.
+     */
+    private int nominationAttempt;
+
+    /**
+     * The number of votes for the current proposed mission.
+     */
+    private int votes;
+
+    /**
+     * The bitmask of players on the current proposed or executing mission.
+     */
+    private int mission;
+
+    /**
+     * The number of spies that sabotaged the mission.
+     */
+    private int traitors;
+
+    /**
+     * The player who voted or chose whether to sabotage first in the current phase.
+     */
+    private int startPlayer;
+
+    /**
+     * The perspective of each resistance member, used as the opponent model: {@code suspicion[row * n + i]} is the
+     * probability that the resistance member with the given row assigns to player {@code i} being a spy.
+     */
+    private double[] suspicion;
+
+    /**
+     * The Zobrist key of the mission results the {@link #suspicion}s have been updated with, so that the key of the
+     * whole state can be found without hashing the suspicions themselves.
+     */
+    private long evidence;
+
+    /**
+     * The teams each spy may nominate, indexed by {@code (round - 1) * n + leader}: the teams from {@link Teams} which
+     * let the spies win a point. Generated the first time they are needed and shared between copies (and threads).
+     */
+    private final AtomicReferenceArray<int[]> spyTeams;
+
+    /**
+     * Whether the other players' votes and sabotages are modelled as a single chance outcome each (the number of yes
+     * votes, or of sabotages), rather than as one move per player.
+     */
+    private boolean aggregate;
+
+    /**
+     * In a hidden state, how likely I think each set of spies is, or {@code null} if it hasn't been computed yet. Shared
+     * between copies, and replaced whenever the suspicions change.
+     */
+    private Beliefs beliefs;
+
+    /**
+     * Creates a new game state with given resistance players and government spies.
+     *
+     * @param players all players
+     * @param spies the spies
+     * @param me my character identifier
+     */
+    public CompactGameState(String players, String spies, char me) {
+        this(players, mask(players, spies), spies.length(), me, false);
+    }
+
+    /**
+     * Creates a new hidden game state for a resistance member, who knows how many spies there are but not who they
+     * are. Hidden states are always aggregated (see {@link #aggregate(boolean)}).
+     *
+     * @param players all players
+     * @param spies the number of spies
+     * @param me my character identifier
+     */
+    public CompactGameState(String players, int spies, char me) {
+        this(players, 0, spies, me, true);
+        this.aggregate = true;
+    }
+
+    /**
+     * Creates a new game state.
+     *
+     * @param players all players
+     * @param spies the bitmask of spies, if known
+     * @param numSpies the number of spies
+     * @param me my character identifier
+     * @param hidden whether the spies are unknown
+     */
+    private CompactGameState(String players, int spies, int numSpies, char me, boolean hidden) {
+        int n = players.length();
+        this.players = players;
+        this.spies = spies;
+        this.numSpies = numSpies;
+        this.hidden = hidden;
+        this.me = players.indexOf(me);
+        this.phase = GameState.Phase.NOMINATION;
+        this.round = 1;
+        this.nominationAttempt = 1;
+        this.currentPlayer = this.me;
+        this.startPlayer = this.me;
+        this.rows = new int[n];
+        this.spyTeams = new AtomicReferenceArray<int[]>(5 * n);
+        //in a hidden state, anyone might be a resistance member, so every player needs a perspective
+        int resistance = 0;
+        for (int i = 0; i < n; ++i) {
+            rows[i] = spy(i) && !hidden ? -1 : resistance++;
+        }
+        this.suspicion = new double[resistance * n];
+        double initial = (double) numSpies / (n - 1);
+        for (int i = 0; i < n; ++i) {
+            if (rows[i] != -1) {
+                for (int j = 0; j < n; ++j) {
+                    suspicion[rows[i] * n + j] = i == j ? 0 : initial;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clones a state.
+     *
+     * @param state the state to clone
+     */
+    private CompactGameState(CompactGameState state) {
+        this.players = state.players;
+        this.spies = state.spies;
+        this.numSpies = state.numSpies;
+        this.hidden = state.hidden;
+        this.me = state.me;
+        this.rows = state.rows;
+        this.phase = state.phase;
+        this.currentPlayer = state.currentPlayer;
+        this.currentLeader = state.currentLeader;
+        this.round = state.round;
+        this.failures = state.failures;
+        this.nominationAttempt = state.nominationAttempt;
+        this.votes = state.votes;
+        this.mission = state.mission;
+        this.traitors = state.traitors;
+        this.startPlayer = state.startPlayer;
+        this.suspicion = state.suspicion.clone();
+        this.evidence = state.evidence;
+        this.aggregate = state.aggregate;
+        this.spyTeams = state.spyTeams;
+        this.beliefs = state.beliefs;
+    }
+
+    /**
+     * @return the players in the game
+     */
+    public String players() {
+        return players;
+    }
+
+    /**
+     * @return my player identifier
+     */
+    public char me() {
+        return players.charAt(me);
+    }
+
+    /**
+     * @param c a player identifier
+     * @return whether the player is a spy (in a hidden state, under the current determinization)
+     */
+    public boolean spy(char c) {
+        return spy(players.indexOf(c));
+    }
+
+    /**
+     * Updates the number of traitors on the mission.
+     *
+     * @param traitors the number of traitors
+     */
+    public void traitors(int traitors) {
+        this.traitors = traitors;
+    }
+
+    /**
+     * Sets how the voting and mission phases are modelled. Normally each player votes, and chooses whether to sabotage,
+     * in turn, starting from me. If aggregated, only my own vote or sabotage is a move of its own; the choices of
+     * everyone else follow as a single chance move (see {@link #chance()}), a {@link ResistanceTransition.Votes} or
+     * {@link ResistanceTransition.Sabotages} giving how many of them voted for the team or sabotaged the mission.
+     * This makes the search tree, and playouts, much shorter. Must not be turned off for a hidden state.
+     *
+     * @param aggregate whether to aggregate the other players' votes and sabotages
+     */
+    public void aggregate(boolean aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * Updates the game phase.
+     *
+     * @param phase the new phase
+     */
+    public void phase(GameState.Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Updates the mission.
+     *
+     * @param mission the new proposed/executing mission
+     */
+    public void mission(String mission) {
+        this.mission = mask(players, mission);
+    }
+
+    /**
+     * Sets the leader (nominator).
+     *
+     * @param leader an index into the array of players
+     */
+    public void currentLeader(int leader) {
+        this.currentLeader = leader;
+        this.currentPlayer = leader;
+        this.startPlayer = leader;
+    }
+
+    /**
+     * Updates the nomination attempt. Shouldn't be set to anything above five.
+     *
+     * @param attempt the attempt number
+     */
+    public void nominationAttempt(int attempt) {
+        this.nominationAttempt = attempt;
+    }
+
+    /**
+     * @return the attempt number for team nomination
+     */
+    public int nominationAttempt() {
+        return nominationAttempt;
+    }
+
+    /**
+     * Updates the number of failures.
+     *
+     * @param failures how many missions have failed
+     */
+    public void failures(int failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * Updates the current round of the game.
+     * @param round the new round
+     */
+    public void round(int round) {
+        this.round = round;
+    }
+
+    /**
+     * Updates the current player. Important to call this before search so that we are simulating from the correct
+     * player's point of view.
+     *
+     * @param player the index in the player string of the current player
+     */
+    public void currentPlayer(int player) {
+        this.currentPlayer = player;
+        this.startPlayer = player;
+    }
+
+    /**
+     * @param member the index of a resistance member
+     * @param player the index of any player
+     * @return the probability that the resistance member assigns to the player being a spy
+     */
+    public double suspicion(int member, int player) {
+        return suspicion[rows[member] * numPlayers() + player];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MCTS.State copy() {
+        return new CompactGameState(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In a hidden state, a set of spies not including me is drawn with the probability my own perspective gives it.
+     */
+    @Override
+    public MCTS.State determinize(Random random, Sampler sampler) {
+        CompactGameState state = new CompactGameState(this);
+        if (hidden) {
+            Beliefs beliefs = beliefs();
+            sampler.totals(beliefs.totals);
+            state.spies = beliefs.sets[sampler.sample(random)];
+        }
+        return state;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<MCTS.Transition, Double> weightedTransitions() {
+        Map<MCTS.Transition, Double> transitions = new HashMap<MCTS.Transition, Double>();
+
+        if (outcome()) {
+            double[] weights = outcomeWeights();
+            for (int i = 0; i < weights.length; ++i) {
+                transitions.put(decode(i), weights[i]);
+            }
+            return transitions;
+        }
+
+        switch (phase) {
+            case NOMINATION: {
+                if (spy(currentLeader)) {
+                    //another spy or me, so add each transition with equal probability
+                    for (int team : teams()) {
+                        transitions.put(new ResistanceTransition.Nomination(string(team)), plausible(team) ? 1.0 : 0.0);
+                    }
+                } else {
+                    //weight transitions such that resistance members are less likely to nominate teams which they think
+                    // are likely to contain spies - the least suspicious team is the most likely to be chosen
+                    int[] teams = teams();
+                    double[] weights = new double[teams.length];
+                    nominationWeights(teams, weights);
+                    for (int i = 0; i < teams.length; ++i) {
+                        transitions.put(new ResistanceTransition.Nomination(string(teams[i])), weights[i]);
+                    }
+                }
+                return transitions;
+            }
+            case MISSION: {
+                //add sabotage and not sabotage with equal probability since opponent model only considers resistance members
+                if (onMission(currentPlayer) && spy(currentPlayer)) {
+                    transitions.put(new ResistanceTransition.Sabotage(true), 1.0);
+                }
+                transitions.put(new ResistanceTransition.Sabotage(false), 1.0);
+                return transitions;
+            }
+            case VOTING: {
+                if (currentPlayer == currentLeader || spy(currentPlayer)) {
+                    //me or another spy, so add each choice with equal weight
+                    transitions.put(new ResistanceTransition.Vote(true), 1.0);
+                    if (currentPlayer != currentLeader)
+                        transitions.put(new ResistanceTransition.Vote(false), 1.0);
+                } else {
+                    //weight transitions such that resistance members are less likely to vote for teams which they
+                    // think are likely to contain spies
+                    double suspicion = teamSuspicion(currentPlayer, mission);
+                    transitions.put(new ResistanceTransition.Vote(true), Integer.bitCount(mission) - suspicion);
+                    transitions.put(new ResistanceTransition.Vote(false), suspicion);
+                }
+                return transitions;
+            }
+        }
+
+        throw new AssertionError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<MCTS.Transition> transitions() {
+        List<MCTS.Transition> list = new ArrayList<MCTS.Transition>();
+
+        if (outcome()) {
+            for (int i = 0; i < moves(); ++i) {
+                list.add(decode(i));
+            }
+            return list;
+        }
+
+        switch (phase) {
+            case NOMINATION: {
+                //add every possible nomination
+                for (int team : teams()) {
+                    list.add(new ResistanceTransition.Nomination(string(team)));
+                }
+                return list;
+            }
+            case MISSION: {
+                //add true if a spy, otherwise can only vote false to sabotage
+                if (onMission(currentPlayer) && spy(currentPlayer)) {
+                    list.add(new ResistanceTransition.Sabotage(true));
+                }
+                list.add(new ResistanceTransition.Sabotage(false));
+                return list;
+            }
+            case VOTING: {
+                list.add(new ResistanceTransition.Vote(true));
+                if (currentPlayer != currentLeader)
+                    list.add(new ResistanceTransition.Vote(false));
+                return list;
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transition(MCTS.Transition transition) {
+        if (transition instanceof ResistanceTransition.Nomination) {
+            nominate(mask(players, ((ResistanceTransition.Nomination) transition).selection()));
+        } else if (transition instanceof ResistanceTransition.Vote) {
+            vote(((ResistanceTransition.Vote) transition).yes());
+        } else if (transition instanceof ResistanceTransition.Sabotage) {
+            sabotage(((ResistanceTransition.Sabotage) transition).sabotage());
+        } else {
+            apply(encode(transition));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int moves() {
+        if (outcome()) {
+            //every number of yes votes from the other players, or of sabotages from the other spies on the mission -
+            // in a hidden state, anyone else on the mission might be a spy
+            if (phase == GameState.Phase.VOTING) {
+                return numPlayers();
+            }
+            return Integer.bitCount(mission & (hidden ? ~0 : spies) & ~(1 << me)) + 1;
+        }
+        switch (phase) {
+            case NOMINATION:
+                return teams().length;
+            case MISSION:
+                return onMission(currentPlayer) && spy(currentPlayer) ? 2 : 1;
+            case VOTING:
+                return currentPlayer == currentLeader ? 1 : 2;
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int move(int index) {
+        if (outcome()) {
+            //the number of yes votes or sabotages
+            return index;
+        }
+        switch (phase) {
+            case NOMINATION:
+                //the bitmask of the team
+                return teams()[index];
+            case MISSION:
+                //sabotage (1) first, if possible, then not (0)
+                return moves() == 2 ? 1 - index : 0;
+            case VOTING:
+                //yes (1) first, then no (0)
+                return 1 - index;
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void weightedMoves(Sampler sampler) {
+        sampler.clear();
+        if (outcome()) {
+            for (double weight : outcomeWeights()) {
+                sampler.add(weight);
+            }
+            return;
+        }
+        switch (phase) {
+            case NOMINATION:
+                if (spy(currentLeader) && hidden) {
+                    //another spy, who only nominates the teams a spy leader may in a state where the spies are known
+                    for (int team : teams()) {
+                        sampler.add(plausible(team) ? 1.0 : 0.0);
+                    }
+                    return;
+                }
+                if (spy(currentLeader)) {
+                    //another spy or me, so each team has equal probability
+                    sampler.uniform(teams().length);
+                    return;
+                }
+                long key = nominationKey();
+                double[] totals = POLICIES.get(key);
+                if (totals == null) {
+                    int[] teams = teams();
+                    double[] weights = new double[teams.length];
+                    nominationWeights(teams, weights);
+                    totals = Sampler.accumulate(weights);
+                    POLICIES.put(key, totals);
+                }
+                sampler.totals(totals);
+                return;
+            case MISSION:
+                //sabotage and not sabotage with equal probability since opponent model only considers resistance members
+                sampler.uniform(moves());
+                return;
+            case VOTING:
+                if (currentPlayer == currentLeader || spy(currentPlayer)) {
+                    sampler.uniform(moves());
+                    return;
+                }
+                //yes (1) first, then no (0)
+                double suspicion = teamSuspicion(currentPlayer, mission);
+                sampler.add(Integer.bitCount(mission) - suspicion);
+                sampler.add(suspicion);
+                return;
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(int move) {
+        if (outcome()) {
+            if (phase == GameState.Phase.VOTING) {
+                votes += move;
+                endVote();
+            } else {
+                traitors += move;
+                endMission();
+            }
+            return;
+        }
+        switch (phase) {
+            case NOMINATION:
+                nominate(move);
+                break;
+            case VOTING:
+                vote(move != 0);
+                break;
+            case MISSION:
+                sabotage(move != 0);
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int encode(MCTS.Transition transition) {
+        if (transition instanceof ResistanceTransition.Nomination) {
+            return mask(players, ((ResistanceTransition.Nomination) transition).selection());
+        } else if (transition instanceof ResistanceTransition.Vote) {
+            return ((ResistanceTransition.Vote) transition).yes() ? 1 : 0;
+        } else if (transition instanceof ResistanceTransition.Sabotage) {
+            return ((ResistanceTransition.Sabotage) transition).sabotage() ? 1 : 0;
+        } else if (transition instanceof ResistanceTransition.Votes) {
+            return ((ResistanceTransition.Votes) transition).yes();
+        } else if (transition instanceof ResistanceTransition.Sabotages) {
+            return ((ResistanceTransition.Sabotages) transition).count();
+        }
+        throw new IllegalArgumentException("unknown transition: " + transition);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MCTS.Transition decode(int move) {
+        if (outcome()) {
+            if (phase == GameState.Phase.VOTING) {
+                return new ResistanceTransition.Votes(move);
+            }
+            return new ResistanceTransition.Sabotages(move);
+        }
+        switch (phase) {
+            case NOMINATION:
+                return new ResistanceTransition.Nomination(string(move));
+            case VOTING:
+                return new ResistanceTransition.Vote(move != 0);
+            case MISSION:
+                return new ResistanceTransition.Sabotage(move != 0);
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean chance() {
+        //in a hidden state, the other players' nominations are chance moves too, as their teams are unknown
+        return aggregate && (hidden || phase != GameState.Phase.NOMINATION) && currentPlayer() != me;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean complete() {
+        return round == 6;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int currentPlayer() {
+        return phase == GameState.Phase.NOMINATION ? currentLeader : currentPlayer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int numPlayers() {
+        return players.length();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int[] scores() {
+        int[] scores = new int[numPlayers()];
+        for (int i = 0; i < scores.length; ++i) {
+            if (spy(i)) {
+                //player has won if three or more sabotages
+                scores[i] = failures >= 3 ? 1 : 0;
+            } else {
+                //player has won if three or more successful missions
+                scores[i] = round - failures - 1 >= 3 ? 1 : 0;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int numTeams() {
+        return 2;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int team(int player) {
+        return spy(player) ? GameState.SPIES : GameState.RESISTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int winner() {
+        return failures >= 3 ? GameState.SPIES : GameState.RESISTANCE;
+    }
+
+    /**
+     * Updates the perspective of each resistance member.
+     *
+     * @param mission the mission members
+     * @param traitors the number of traitors
+     */
+    public void update(String mission, int traitors) {
+        update(mask(players, mission), traitors);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is the exclusive-or of a random key for the value of each field (a Zobrist key), including the results
+     * of each mission so far in place of the suspicions they produced.
+     */
+    @Override
+    public long key() {
+        return evidence ^
+                zobrist(0, phase.ordinal()) ^
+                zobrist(1, currentPlayer) ^
+                zobrist(2, currentLeader) ^
+                zobrist(3, round) ^
+                zobrist(4, failures) ^
+                zobrist(5, nominationAttempt) ^
+                zobrist(6, votes) ^
+                zobrist(7, mission) ^
+                zobrist(8, traitors) ^
+                zobrist(9, startPlayer);
+    }
+
+    /**
+     * @param feature a number identifying part of the state
+     * @param value the value of that part
+     * @return the Zobrist key for the part having the value
+     */
+    private static long zobrist(int feature, int value) {
+        return SplitMix.hash((long) feature << 32 | value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompactGameState that = (CompactGameState) o;
+        return spies == that.spies &&
+                me == that.me &&
+                currentPlayer == that.currentPlayer &&
+                currentLeader == that.currentLeader &&
+                round == that.round &&
+                failures == that.failures &&
+                nominationAttempt == that.nominationAttempt &&
+                votes == that.votes &&
+                mission == that.mission &&
+                traitors == that.traitors &&
+                startPlayer == that.startPlayer &&
+                phase == that.phase &&
+                aggregate == that.aggregate &&
+                hidden == that.hidden &&
+                players.equals(that.players) &&
+                Arrays.equals(suspicion, that.suspicion);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = players.hashCode();
+        result = 31 * result + (phase != null ? phase.hashCode() : 0);
+        result = 31 * result + currentPlayer;
+        result = 31 * result + currentLeader;
+        result = 31 * result + round;
+        result = 31 * result + failures;
+        result = 31 * result + nominationAttempt;
+        result = 31 * result + votes;
+        result = 31 * result + mission;
+        result = 31 * result + traitors;
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "CompactGameState{players='%s', spies='%s', me=%s, phase=%s, currentPlayer=%d, currentLeader=%d, " +
+                        "round=%d, failures=%d, nominationAttempt=%d, votes=%d, mission='%s', traitors=%d}",
+                players, string(spies), me(), phase, currentPlayer, currentLeader, round, failures,
+                nominationAttempt, votes, string(mission), traitors
+        );
+    }
+
+    /**
+     * Nomination phase - choose a team and transition to the voting phase.
+     *
+     * @param team the bitmask of players on the team
+     */
+    private void nominate(int team) {
+        mission = team;
+        phase = GameState.Phase.VOTING;
+        votes = 0;
+        startPlayer = me;
+        currentPlayer = me;
+    }
+
+    /**
+     * Voting phase - add to the current vote, and move on to the next phase once everyone has voted.
+     *
+     * @param yes whether the current player voted for the team
+     */
+    private void vote(boolean yes) {
+        votes += yes ? 1 : 0;
+        if (currentPlayer != before(startPlayer)) {
+            //not the final player - continue voting
+            currentPlayer = after(currentPlayer);
+        } else {
+            endVote();
+        }
+    }
+
+    /**
+     * Voting done - now transition to the appropriate next phase.
+     */
+    private void endVote() {
+        startPlayer = me;
+        currentPlayer = me;
+        if (votes > numPlayers() / 2 || nominationAttempt == 5) {
+            phase = GameState.Phase.MISSION;
+            traitors = 0;
+            nominationAttempt = 1;
+        } else {
+            currentLeader = after(currentLeader);
+            phase = GameState.Phase.NOMINATION;
+            nominationAttempt++;
+        }
+        votes = 0;
+    }
+
+    /**
+     * Mission phase - add to the number of traitors, and finish the mission once every player has chosen.
+     *
+     * @param sabotage whether the current player sabotaged the mission
+     */
+    private void sabotage(boolean sabotage) {
+        traitors += sabotage ? 1 : 0;
+        if (currentPlayer != before(startPlayer)) {
+            //not the final player - continue
+            currentPlayer = after(currentPlayer);
+        } else {
+            endMission();
+        }
+    }
+
+    /**
+     * Mission done - move to the next phase.
+     */
+    private void endMission() {
+        startPlayer = me;
+        currentPlayer = me;
+        if (traitors != 0 && (traitors != 1 || round != 4 || numPlayers() < 7)) {
+            failures++;
+        }
+        //update perspectives
+        update(mission, traitors);
+        traitors = 0;
+        phase = GameState.Phase.NOMINATION;
+        nominationAttempt = 1;
+        votes = 0;
+        round++;
+        currentLeader = after(currentLeader);
+    }
+
+    /**
+     * @return whether the next move is the aggregated outcome of the other players' votes or sabotages
+     */
+    private boolean outcome() {
+        return aggregate && phase != GameState.Phase.NOMINATION && currentPlayer != me;
+    }
+
+    /**
+     * Gives how likely I think each set of spies is, given the results of the missions so far, working it out if the
+     * suspicions have changed since it was last needed. Each set's probability treats my suspicions of each player as
+     * independent, as in {@link SpySets#update(double[], int, int, int, int, int)}.
+     *
+     * @return the sets of spies which don't include me, with the running totals of their probabilities
+     */
+    private Beliefs beliefs() {
+        Beliefs beliefs = this.beliefs;
+        if (beliefs != null && beliefs.evidence == evidence) {
+            return beliefs;
+        }
+        int n = numPlayers();
+        int offset = rows[me] * n;
+        int[] all = SpySets.of(n, numSpies);
+        int[] sets = new int[all.length];
+        double[] totals = new double[all.length];
+        int count = 0;
+        for (int set : all) {
+            if ((set & (1 << me)) != 0) {
+                continue;
+            }
+            double p = 1.0;
+            for (int i = 0; i < n; ++i) {
+                if (i != me) {
+                    double s = suspicion[offset + i];
+                    p *= (set & (1 << i)) != 0 ? s : 1 - s;
+                }
+            }
+            sets[count] = set;
+            totals[count++] = p;
+        }
+        beliefs = new Beliefs(evidence, Arrays.copyOf(sets, count), Sampler.accumulate(Arrays.copyOf(totals, count)));
+        //copies may be working this out at the same time - the fields are final, so whichever is kept is complete
+        this.beliefs = beliefs;
+        return beliefs;
+    }
+
+    /**
+     * Gives the probability of each outcome of a chance move, from the opponent model: each other player votes for the
+     * team with the same probability as their single vote would have, and each other spy on the mission sabotages it
+     * with probability one half. The votes are independent, so the number of yes votes is found one voter at a time.
+     *
+     * @return the probability of each number of yes votes or sabotages, indexed by move
+     */
+    private double[] outcomeWeights() {
+        double[] weights = new double[moves()];
+        weights[0] = 1.0;
+        int count = 0;
+        for (int i = 0; i < numPlayers(); ++i) {
+            if (i == me) {
+                continue;
+            }
+            double p;
+            if (phase == GameState.Phase.VOTING) {
+                if (i == currentLeader) {
+                    p = 1.0;
+                } else if (spy(i)) {
+                    p = 0.5;
+                } else {
+                    p = 1 - teamSuspicion(i, mission) / Integer.bitCount(mission);
+                }
+            } else if (spy(i) && onMission(i)) {
+                p = 0.5;
+            } else {
+                continue;
+            }
+            //add this player to the distribution of the number of yes votes (or sabotages) so far
+            ++count;
+            for (int k = count; k > 0; --k) {
+                weights[k] = weights[k] * (1 - p) + weights[k - 1] * p;
+            }
+            weights[0] *= 1 - p;
+        }
+        return weights;
+    }
+
+    /**
+     * @return the bitmasks of every team the current leader may nominate: every team of the right size containing the
+     *         leader, and for spy leaders only those which let the spies win a point - unless the state is hidden, in
+     *         which case the moves mustn't depend on who the spies are, and a spy leader's other teams are given a
+     *         weight of zero instead
+     */
+    private int[] teams() {
+        int n = numPlayers();
+        int[] teams = Teams.of(n, round, currentLeader);
+        if (!spy(currentLeader) || hidden) {
+            return teams;
+        }
+        int index = (round - 1) * n + currentLeader;
+        int[] filtered = spyTeams.get(index);
+        if (filtered == null) {
+            filtered = new int[teams.length];
+            int count = 0;
+            for (int team : teams) {
+                if (plausible(team)) {
+                    filtered[count++] = team;
+                }
+            }
+            //another thread may be doing the same - either copy is fine, so keep whichever wins
+            spyTeams.compareAndSet(index, null, Arrays.copyOf(filtered, count));
+            filtered = spyTeams.get(index);
+        }
+        return filtered;
+    }
+
+    /**
+     * Weights the nominations of a resistance leader such that the most suspicious teams are least likely to be
+     * picked. Teams are ranked by their total suspicion from the leader's perspective, in descending order: the most
+     * suspicious teams all have rank one, and every other team's rank is its position after them, plus one. A team
+     * in a tie has the average of the ranks the tie covers - the rank it would get on average if the tie were put in a
+     * random order - so it is picked with the same probability as in {@link GameState#weightedTransitions()}.
+     *
+     * @param teams the teams the leader may nominate
+     * @param weights filled with the weight of each team
+     */
+    private void nominationWeights(int[] teams, double[] weights) {
+        int n = teams.length;
+        for (int i = 0; i < n; ++i) {
+            weights[i] = teamSuspicion(currentLeader, teams[i]);
+        }
+        //suspicion values in ascending order, so the teams more suspicious than a team are those after its value
+        double[] sorted = weights.clone();
+        Arrays.sort(sorted);
+        int top = n - lowest(sorted, sorted[n - 1]);
+        for (int i = 0; i < n; ++i) {
+            int from = lowest(sorted, weights[i]);
+            int to = from + 1;
+            while (to < n && sorted[to] == weights[i]) {
+                ++to;
+            }
+            //the tie covers positions n - to up to n - from - 1 in descending order
+            double index = to == n ? 1 : (2 * n - to - from - 1) / 2.0 - top + 2;
+            weights[i] = index / n;
+        }
+    }
+
+    /**
+     * @param sorted values in ascending order
+     * @param value one of the values
+     * @return the index of the first occurrence of the value
+     */
+    private static int lowest(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        while (index > 0 && sorted[index - 1] == value) {
+            --index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the key of the current resistance leader's nomination weights in {@link #POLICIES}
+     */
+    private long nominationKey() {
+        int n = numPlayers();
+        int offset = rows[currentLeader] * n;
+        long key = PolicyCache.key(n, round, currentLeader);
+        for (int i = 0; i < n; ++i) {
+            key = PolicyCache.key(key, suspicion[offset + i]);
+        }
+        return key;
+    }
+
+    /**
+     * @param member the index of a resistance member
+     * @param team a bitmask of players
+     * @return the total suspicion of the players in the team, from the resistance member's perspective
+     */
+    private double teamSuspicion(int member, int team) {
+        int offset = rows[member] * numPlayers();
+        double total = 0;
+        for (int bits = team; bits != 0; bits &= bits - 1) {
+            total += suspicion[offset + Integer.numberOfTrailingZeros(bits)];
+        }
+        return total;
+    }
+
+    /**
+     * Updates the perspective of each resistance member using Bayes' rule, as in {@link Perspective#update(char[],
+     * int)}.
+     *
+     * @param mission the bitmask of players on the mission
+     * @param traitors the number of traitors
+     */
+    private void update(int mission, int traitors) {
+        //a mission's result is keyed by the round it happened in, as the order of the updates matters
+        evidence ^= zobrist(10 + round, mission << 3 | traitors);
+        int n = numPlayers();
+        SpySets.update(suspicion, 0, suspicion.length / n, n, numSpies, mission, traitors);
+    }
+
+    /**
+     * @param i a player index
+     * @return whether the player is a spy
+     */
+    private boolean spy(int i) {
+        return (spies & (1 << i)) != 0;
+    }
+
+    /**
+     * @param i a player index
+     * @return whether the player is on the current mission
+     */
+    private boolean onMission(int i) {
+        return (mission & (1 << i)) != 0;
+    }
+
+    /**
+     * @param team a bitmask of players
+     * @return whether a spy leader may nominate the team
+     */
+    private boolean plausible(int team) {
+        return Integer.bitCount(team & spies) <= numSabotagesRequiredForPoint();
+    }
+
+    /**
+     * @return how many spies are needed on the team to be able to win a point
+     */
+    private int numSabotagesRequiredForPoint() {
+        return round == 4 && numPlayers() >= 7 ? 2 : 1;
+    }
+
+    /**
+     * @param i an integer representing a player index
+     * @return the player before the given player
+     */
+    private int before(int i) {
+        return (i - 1 + numPlayers()) % numPlayers();
+    }
+
+    /**
+     * @param i an integer representing a player index
+     * @return the player after the given player
+     */
+    private int after(int i) {
+        return (i + 1) % numPlayers();
+    }
+
+    /**
+     * @param mask a bitmask of players
+     * @return the players in the bitmask, in the same order as the player string
+     */
+    private String string(int mask) {
+        StringBuilder sb = new StringBuilder(Integer.bitCount(mask));
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            sb.append(players.charAt(Integer.numberOfTrailingZeros(bits)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param players all players
+     * @param s some of the players
+     * @return the bitmask of the given players
+     */
+    private static int mask(String players, String s) {
+        int mask = 0;
+        for (char c : s.toCharArray()) {
+            int i = players.indexOf(c);
+            if (i != -1) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The probability of each set of spies from my perspective, for drawing determinizations of a hidden state.
+     */
+    private static final class Beliefs {
+
+        //the key of the mission results the probabilities were worked out from
+        private final long evidence;
+
+        //the bitmask of each set of spies
+        private final int[] sets;
+
+        //the running totals of the sets' probabilities
+        private final double[] totals;
+
+        /**
+         * @param evidence the key of the mission results the probabilities were worked out from
+         * @param sets the bitmask of each set of spies
+         * @param totals the running totals of the sets' probabilities
+         */
+        private Beliefs(long evidence, int[] sets, double[] totals) {
+            this.evidence = evidence;
+            this.sets = sets;
+            this.totals = totals;
+        }
+
+    }
+
+}
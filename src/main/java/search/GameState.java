@@ -11,7 +11,7 @@ public class GameState implements MCTS.State {
     /**
      * MISSION_NUMBERS[nplayers-5][round-1] is the number of players on a mission this round
      */
-    private static final int[][] MISSION_NUMBERS = {
+    static final int[][] MISSION_NUMBERS = {
             { 2, 3, 2, 3, 3 },
             { 2, 3, 4, 3, 4 },
             { 2, 3, 3, 4, 4 },
@@ -20,6 +20,21 @@ public class GameState implements MCTS.State {
             { 3, 4, 4, 5, 5 }
     };
 
+    /**
+     * The nomination weights of resistance leaders, shared by every state.
+     */
+    private static final PolicyCache POLICIES = new PolicyCache(1 << 12);
+
+    /**
+     * The team of the resistance members, as given by {@link #team(int)}.
+     */
+    public static final int RESISTANCE = 0;
+
+    /**
+     * The team of the spies, as given by {@link #team(int)}.
+     */
+    public static final int SPIES = 1;
+
     /**
      * All players in the game. The order is important because the order of leaders
      * who select the team is dependent on this ordering.
@@ -96,6 +111,17 @@ public class GameState implements MCTS.State {
      */
     private int startPlayer;
 
+    /**
+     * The transitions possible from this state, in the order of their move indices, or {@code null} if the state has
+     * changed since they were last generated.
+     */
+    private List<MCTS.Transition> moves;
+
+    /**
+     * The weight of each of the cached {@link #moves}, or {@code null} if they haven't been computed yet.
+     */
+    private double[] weights;
+
     /**
      * Creates a new game state with given resistance players and government spies.
      *
@@ -132,6 +158,14 @@ public class GameState implements MCTS.State {
         return me;
     }
 
+    /**
+     * @param c a player identifier
+     * @return whether the player is a spy
+     */
+    public boolean spy(char c) {
+        return contains(spies, c);
+    }
+
     /**
      * Updates the number of traitors on the mission.
      *
@@ -148,6 +182,7 @@ public class GameState implements MCTS.State {
      */
     public void phase(Phase phase) {
         this.phase = phase;
+        this.moves = null;
     }
 
     /**
@@ -157,6 +192,7 @@ public class GameState implements MCTS.State {
      */
     public void mission(String mission) {
         this.mission = mission;
+        this.moves = null;
     }
 
     /**
@@ -175,6 +211,7 @@ public class GameState implements MCTS.State {
         this.currentLeader = leader;
         this.currentPlayer = leader;
         this.startPlayer = leader;
+        this.moves = null;
     }
 
     /**
@@ -208,6 +245,7 @@ public class GameState implements MCTS.State {
      */
     public void round(int round) {
         this.round = round;
+        this.moves = null;
     }
 
     /**
@@ -219,6 +257,17 @@ public class GameState implements MCTS.State {
     public void currentPlayer(int player) {
         this.currentPlayer = player;
         this.startPlayer = player;
+        this.moves = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every player's role is known to a spy, so this is just a copy.
+     */
+    @Override
+    public MCTS.State determinize(Random random, Sampler sampler) {
+        return copy();
     }
 
     /**
@@ -255,47 +304,47 @@ public class GameState implements MCTS.State {
             case NOMINATION: {
                 if (contains(spies, players.charAt(currentLeader))) {
                     //if i am the current player or is another spy, add each transition with equal probability
-                    for (String s : combinations(players, MISSION_NUMBERS[numPlayers() - 5][round - 1])) {
-                        if (contains(s, players.charAt(currentLeader))) {
-                            if (contains(spies, players.charAt(currentLeader))) {
-                                if (numSpies(s) <= numSabotagesRequiredForPoint()) {
-                                    transitions.put(new ResistanceTransition.Nomination(s), 1.0);
-                                }
-                            } else {
-                                transitions.put(new ResistanceTransition.Nomination(s), 1.0);
-                            }
-                        }
+                    for (String s : nominations()) {
+                        transitions.put(new ResistanceTransition.Nomination(s), 1.0);
                     }
                 } else {
                     //weight transitions such that resistance members are less likely to nominate teams which they think
                     // are likely to contain spies
                     Perspective perspective = map.get(players.charAt(currentLeader));
                     List<Map.Entry<String, Double>> list = new ArrayList<Map.Entry<String, Double>>();
-                    for (String s : combinations(players, MISSION_NUMBERS[numPlayers() - 5][round - 1])) {
-                        if (contains(s, players.charAt(currentLeader))) {
-                            double suspicion = 0;
-                            for (char c : s.toCharArray()) {
-                                suspicion += perspective.lookup(c);
-                            }
-                            list.add(new AbstractMap.SimpleImmutableEntry<String, Double>(s, suspicion));
+                    for (String s : nominations()) {
+                        double suspicion = 0;
+                        for (char c : s.toCharArray()) {
+                            suspicion += perspective.lookup(c);
                         }
+                        list.add(new AbstractMap.SimpleImmutableEntry<String, Double>(s, suspicion));
                     }
-                    Collections.shuffle(list);
                     Collections.sort(list, new Comparator<Map.Entry<String, Double>>() {
                         @Override
                         public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2) {
                             return (int) Math.signum(o2.getValue() - o1.getValue());
                         }
                     });
-                    double last = list.get(0).getValue();
-                    int index = 1;
-                    for (int i = 0; i < list.size(); ++i) {
-                        String nomination = list.get(i).getKey();
+                    //the most suspicious teams get the lowest rank, one, and every other team's rank is its position in
+                    // the sorted list. Ties used to be put in a random order by a shuffle before sorting: each team in
+                    // a tie is given the average of the ranks the tie covers instead, which is the rank it would get on
+                    // average, so a team is picked with exactly the same probability - without the shared generator
+                    int top = 0;
+                    for (int i = 0, end; i < list.size(); i = end) {
                         double suspicion = list.get(i).getValue();
-                        if (suspicion != last) {
-                            ++index;
+                        end = i + 1;
+                        while (end < list.size() && list.get(end).getValue() == suspicion) {
+                            ++end;
+                        }
+                        if (i == 0) {
+                            //the number of most suspicious teams, which all share rank one
+                            top = end;
+                        }
+                        double index = i == 0 ? 1 : (i + end - 1) / 2.0 - top + 2;
+                        for (int j = i; j < end; ++j) {
+                            String nomination = list.get(j).getKey();
+                            transitions.put(new ResistanceTransition.Nomination(nomination), index / list.size());
                         }
-                        transitions.put(new ResistanceTransition.Nomination(nomination), (double) index / list.size());
                     }
                 }
                 return transitions;
@@ -349,16 +398,8 @@ public class GameState implements MCTS.State {
         switch (phase) {
             case NOMINATION: {
                 //add every possible nomination
-                for (String s : combinations(players, MISSION_NUMBERS[numPlayers() - 5][round - 1])) {
-                    if (contains(s, players.charAt(currentLeader))) {
-                        if (contains(spies, players.charAt(currentLeader))) {
-                            if (numSpies(s) <= numSabotagesRequiredForPoint()) {
-                                set.add(new ResistanceTransition.Nomination(s));
-                            }
-                        } else {
-                            set.add(new ResistanceTransition.Nomination(s));
-                        }
-                    }
+                for (String s : nominations()) {
+                    set.add(new ResistanceTransition.Nomination(s));
                 }
                 return set;
             }
@@ -387,6 +428,7 @@ public class GameState implements MCTS.State {
      */
     @Override
     public void transition(MCTS.Transition transition) {
+        moves = null;
         if (transition instanceof ResistanceTransition.Nomination) {
             //nomination phase - choose a team and transition to the voting phase
             mission = ((ResistanceTransition.Nomination) transition).selection();
@@ -440,6 +482,124 @@ public class GameState implements MCTS.State {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int moves() {
+        return cachedTransitions().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int move(int index) {
+        return encode(cachedTransitions().get(index));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void weightedMoves(Sampler sampler) {
+        //regenerates the moves (and discards the weights) if the state has changed
+        List<MCTS.Transition> moves = cachedTransitions();
+        if (phase == Phase.NOMINATION && !contains(spies, players.charAt(currentLeader))) {
+            //a resistance leader's weights only depend on their suspicions, which often repeat between playouts
+            long key = nominationKey();
+            double[] totals = POLICIES.get(key);
+            if (totals == null) {
+                Map<MCTS.Transition, Double> map = weightedTransitions();
+                totals = new double[moves.size()];
+                for (int i = 0; i < totals.length; ++i) {
+                    totals[i] = map.get(moves.get(i));
+                }
+                POLICIES.put(key, Sampler.accumulate(totals));
+            }
+            sampler.totals(totals);
+            return;
+        }
+        if (weights == null) {
+            Map<MCTS.Transition, Double> map = weightedTransitions();
+            weights = new double[moves.size()];
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i] = map.get(moves.get(i));
+            }
+        }
+        sampler.clear();
+        for (double weight : weights) {
+            sampler.add(weight);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(int move) {
+        transition(decode(move));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int encode(MCTS.Transition transition) {
+        if (transition instanceof ResistanceTransition.Nomination) {
+            //the bitmask of players on the team
+            int mask = 0;
+            for (char c : ((ResistanceTransition.Nomination) transition).selection().toCharArray()) {
+                mask |= 1 << players.indexOf(c);
+            }
+            return mask;
+        } else if (transition instanceof ResistanceTransition.Vote) {
+            return ((ResistanceTransition.Vote) transition).yes() ? 1 : 0;
+        } else if (transition instanceof ResistanceTransition.Sabotage) {
+            return ((ResistanceTransition.Sabotage) transition).sabotage() ? 1 : 0;
+        }
+        throw new IllegalArgumentException("unknown transition: " + transition);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MCTS.Transition decode(int move) {
+        switch (phase) {
+            case NOMINATION:
+                return new ResistanceTransition.Nomination(string(move));
+            case VOTING:
+                return new ResistanceTransition.Vote(move != 0);
+            case MISSION:
+                return new ResistanceTransition.Sabotage(move != 0);
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the key of the current resistance leader's nomination weights in {@link #POLICIES}
+     */
+    private long nominationKey() {
+        Perspective perspective = map.get(players.charAt(currentLeader));
+        long key = PolicyCache.key(players.length(), round, currentLeader);
+        for (char c : players.toCharArray()) {
+            key = PolicyCache.key(key, perspective.lookup(c));
+        }
+        return key;
+    }
+
+    /**
+     * @return the transitions possible from this state, generated once and then kept until the state changes
+     */
+    private List<MCTS.Transition> cachedTransitions() {
+        if (moves == null) {
+            moves = transitions();
+            weights = null;
+        }
+        return moves;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -482,6 +642,90 @@ public class GameState implements MCTS.State {
         return scores;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int numTeams() {
+        return 2;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int team(int player) {
+        return contains(spies, players.charAt(player)) ? SPIES : RESISTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int winner() {
+        return spyPoints() >= 3 ? SPIES : RESISTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every player's vote and sabotage is a move of its own, so there are no chance moves.
+     */
+    @Override
+    public boolean chance() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long key() {
+        return SplitMix.hash(31L * hashCode() + map.hashCode());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameState that = (GameState) o;
+        return me == that.me &&
+                currentPlayer == that.currentPlayer &&
+                currentLeader == that.currentLeader &&
+                round == that.round &&
+                failures == that.failures &&
+                nominationAttempt == that.nominationAttempt &&
+                votes == that.votes &&
+                traitors == that.traitors &&
+                startPlayer == that.startPlayer &&
+                phase == that.phase &&
+                players.equals(that.players) &&
+                spies.equals(that.spies) &&
+                (mission != null ? mission.equals(that.mission) : that.mission == null) &&
+                map.equals(that.map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = players.hashCode();
+        result = 31 * result + (phase != null ? phase.hashCode() : 0);
+        result = 31 * result + currentPlayer;
+        result = 31 * result + currentLeader;
+        result = 31 * result + round;
+        result = 31 * result + failures;
+        result = 31 * result + nominationAttempt;
+        result = 31 * result + votes;
+        result = 31 * result + (mission != null ? mission.hashCode() : 0);
+        result = 31 * result + traitors;
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -516,43 +760,41 @@ public class GameState implements MCTS.State {
      * @param traitors the number of traitors
      */
     public void update(String mission, int traitors) {
-        char[] array = mission.toCharArray();
-        for (Perspective perspective : map.values()) {
-            perspective.update(array, traitors);
-        }
+        moves = null;
+        Perspective.update(map.values(), mission.toCharArray(), traitors);
     }
 
     /**
-     * Gives the set of all combinations of the given string having length n.
+     * Gives every team the current leader may nominate, looked up in the precomputed {@link Teams} tables. Spies only
+     * nominate teams which let the spies win a point.
      *
-     * @param s the string to find combinations in
-     * @param n the size of each combination
-     * @return a set containing all unique combinations
-     */
-    private Set<String> combinations(String s, int n) {
-        Set<String> set = new HashSet<String>();
-        combinations(s.toCharArray(), n, 0, new char[n], set);
-        return set;
+     * @return the teams, with players in the same order as the player string
+     */
+    private List<String> nominations() {
+        int[] teams = Teams.of(numPlayers(), round, currentLeader);
+        List<String> list = new ArrayList<String>(teams.length);
+        boolean spy = contains(spies, players.charAt(currentLeader));
+        for (int team : teams) {
+            String s = string(team);
+            if (!spy || numSpies(s) <= numSabotagesRequiredForPoint()) {
+                list.add(s);
+            }
+        }
+        return list;
     }
 
     /**
-     * Iterates over every combination of a string of a certain length and adds them to a set.
-     *
-     * @param array the string to find combinations for, as a character array
-     * @param len set to 0
-     * @param start set to 0
-     * @param result set to a char array of the size of combination wanted
-     * @param set an empty set
-     */
-    private void combinations(char[] array, int len, int start, char[] result, Set<String> set) {
-        if (len == 0) {
-            set.add(new String(result));
-            return;
-        }
-        for (int i = start; i <= array.length - len; ++i) {
-            result[result.length - len] = array[i];
-            combinations(array, len - 1, i + 1, result, set);
+     * @param mask a bitmask of player indices
+     * @return the players in the bitmask, in the same order as the player string
+     */
+    private String string(int mask) {
+        StringBuilder sb = new StringBuilder(Integer.bitCount(mask));
+        for (int i = 0; i < players.length(); ++i) {
+            if ((mask & (1 << i)) != 0) {
+                sb.append(players.charAt(i));
+            }
         }
+        return sb.toString();
     }
 
     /**
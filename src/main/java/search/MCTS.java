@@ -4,6 +4,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Sam Marsh
@@ -11,15 +12,41 @@ import java.util.concurrent.Future;
 public class MCTS {
 
     /**
-     * The random number generator used for random simulations, etc.
+     * The default number of nodes each search may hold in memory, over all of its trees.
      */
-    private static final Random RANDOM = new Random();
+    public static final int DEFAULT_NODES = 1 << 18;
 
     /**
-     * The thread which does the searching.
+     * How often, in milliseconds, {@link #transition(long, long)} checks whether the search can stop.
+     */
+    private static final int CHECK_INTERVAL = 5;
+
+    /**
+     * How many playouts a worker makes between adding them to the shared count, to keep contention on it low.
+     */
+    private static final int REPORT_INTERVAL = 16;
+
+    /**
+     * The number of worker threads searching in parallel.
+     */
+    private final int threads;
+
+    /**
+     * How the worker threads share the work of searching.
+     */
+    private final Parallelism parallelism;
+
+    /**
+     * The threads which do the searching.
      */
     private final ExecutorService executor;
 
+    /**
+     * The random number generator used on the calling thread, to break ties when picking the final move. Each worker's
+     * generator is split from this one when a search starts.
+     */
+    private final SplitMix random;
+
     /**
      * Whether a search is in progress. Volatile since change needs to be immediately visible when modified from other
      * thread.
@@ -32,55 +59,440 @@ public class MCTS {
     private State state;
 
     /**
-     * The currently executing search.
+     * The currently executing searches, one for each worker thread, or an empty list if there is no search in
+     * progress.
      */
-    private Future<?> future;
+    private List<Future<?>> futures;
 
     /**
-     * The root of the search tree.
+     * The number of playouts made since the current search began, as reported by the workers.
      */
-    private Node root;
+    private final AtomicLong playouts;
 
     /**
-     * Creates a new Monte Carlo SearchSpyAgent tree from the given state.
+     * The number of playouts after which the workers stop by themselves.
+     */
+    private volatile long budget;
+
+    /**
+     * The most nodes held by all of the {@link #trees} together.
+     */
+    private final int nodes;
+
+    /**
+     * The search trees: one for each worker thread under {@link Parallelism#ROOT}, or a single shared tree under
+     * {@link Parallelism#TREE}. These are kept between searches, and their roots moved down as transitions are
+     * observed with {@link #advance(Transition)}. An empty tree is given a fresh root on the next search.
+     */
+    private Tree[] trees;
+
+    /**
+     * The number of states held in the transposition tables of all of the {@link #trees} together, or zero if
+     * transpositions are disabled. Each tree has a table of its own, so that the trees under {@link Parallelism#ROOT}
+     * stay independent of each other.
+     */
+    private int transpositions;
+
+    /**
+     * The progressive widening coefficient and exponent, as given to {@link #widening(double, double)}.
+     */
+    private double wideningCoefficient;
+    private double wideningExponent;
+
+    /**
+     * How children are picked during selection.
+     */
+    private SelectionPolicy policy = SelectionPolicy.UCB1;
+
+    /**
+     * Whether each search is measured, as given to {@link #telemetry(boolean)}.
+     */
+    private boolean telemetry;
+
+    /**
+     * The measurements of each worker in the current (or last) search, empty if it isn't measured.
+     */
+    private List<Telemetry.Counters> counters = Collections.emptyList();
+
+    /**
+     * When the workers last started, and when the last of them finished (or zero if they are still running), by
+     * {@link System#nanoTime()}.
+     */
+    private long started;
+    private final AtomicLong finished;
+
+    /**
+     * The time spent searching in earlier runs of the workers in the current (or last) search, in nanoseconds. A
+     * search which carries on from a finished ponder starts the workers again, and keeps counting from the ponder.
+     */
+    private long elapsed;
+
+    /**
+     * Whether the last search was a ponder from the current root, which the next decision carries on from even if its
+     * workers have already used up its playouts.
+     */
+    private boolean resumable;
+
+    /**
+     * Creates a new Monte Carlo SearchSpyAgent tree from the given state, using one worker thread for each available
+     * processor.
      *
      * @param state the state to start searching from
      */
     public MCTS(State state) {
-        this.state = state;
-        this.executor = Executors.newSingleThreadExecutor();
+        this(state, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new Monte Carlo SearchSpyAgent tree from the given state.
+     *
+     * @param state the state to start searching from
+     * @param threads the number of worker threads to search with
+     * @throws IllegalArgumentException if the number of threads is less than one
+     */
+    public MCTS(State state, int threads) throws IllegalArgumentException {
+        this(state, threads, Parallelism.ROOT);
+    }
+
+    /**
+     * Creates a new Monte Carlo SearchSpyAgent tree from the given state.
+     *
+     * @param state the state to start searching from
+     * @param threads the number of worker threads to search with
+     * @param parallelism how the worker threads share the search
+     * @throws IllegalArgumentException if the number of threads is less than one
+     */
+    public MCTS(State state, int threads, Parallelism parallelism) throws IllegalArgumentException {
+        this(state, threads, parallelism, new SplitMix().nextLong());
+    }
+
+    /**
+     * Creates a new Monte Carlo SearchSpyAgent tree from the given state. Every random number used by the search is
+     * derived from the given seed, so a single-threaded search given the same seed and the same number of iterations
+     * makes the same choices.
+     *
+     * @param state the state to start searching from
+     * @param threads the number of worker threads to search with
+     * @param parallelism how the worker threads share the search
+     * @param seed the seed for the search's random number generators
+     * @throws IllegalArgumentException if the number of threads is less than one
+     */
+    public MCTS(State state, int threads, Parallelism parallelism, long seed) throws IllegalArgumentException {
+        this(state, threads, parallelism, seed, DEFAULT_NODES);
+    }
+
+    /**
+     * Creates a new Monte Carlo SearchSpyAgent tree from the given state, holding at most the given number of nodes.
+     * The nodes are allocated up front and recycled between searches, so the memory used does not grow as the search
+     * goes on: once they are all in use, the trees stop growing and the search carries on with playouts from their
+     * leaves.
+     *
+     * @param state the state to start searching from
+     * @param threads the number of worker threads to search with
+     * @param parallelism how the worker threads share the search
+     * @param seed the seed for the search's random number generators
+     * @param nodes the most nodes to hold, over all of the trees
+     * @throws IllegalArgumentException if the number of threads is less than one, or there are too few nodes for
+     *         each tree to have a root
+     */
+    public MCTS(State state, int threads, Parallelism parallelism, long seed, int nodes)
+            throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (nodes < (parallelism == Parallelism.ROOT ? threads : 1)) {
+            throw new IllegalArgumentException("too few nodes: " + nodes);
+        }
+        this.state = state.copy();
+        this.threads = threads;
+        this.parallelism = parallelism;
+        this.nodes = nodes;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.random = new SplitMix(seed);
         this.searching = false;
-        this.future = null;
+        this.futures = Collections.emptyList();
+        this.playouts = new AtomicLong();
+        this.budget = Long.MAX_VALUE;
+        this.finished = new AtomicLong();
     }
 
     /**
-     * Updates the initial state. Cannot be called while searching.
+     * Updates the initial state, stopping any search in progress. If the new state is equal to the state reached by
+     * the transitions passed to {@link #advance(Transition)}, the statistics gathered so far for it are kept;
+     * otherwise the next search starts from a fresh tree.
      *
      * @param state the new state to search from
-     * @throws IllegalStateException if a search is in progress
      */
-    public void state(State state) throws IllegalStateException {
-        if (searching || (future != null && !future.isDone())) {
-            future.cancel(true);
+    public void state(State state) {
+        stop();
+        if (!state.equals(this.state)) {
+            resumable = false;
+            if (trees != null) {
+                for (Tree tree : trees) {
+                    tree.clear();
+                }
+            }
         }
         this.state = state.copy();
     }
 
     /**
-     * Begins the asynchronous search and returns immediately.
+     * @return a copy of the state the next search starts from
+     */
+    State state() {
+        return state.copy();
+    }
+
+    /**
+     * @return whether the workers are searching: a search is in progress and hasn't used up its playouts
+     */
+    boolean searching() {
+        return searching;
+    }
+
+    /**
+     * Records a transition which was actually taken in the game, stopping any search in progress. The root of each
+     * tree is moved down to the child reached by the transition, so the work done in earlier searches carries over to
+     * the next one, and the rest of the tree is recycled. A tree which never visited the transition is emptied.
+     *
+     * @param transition the transition which was taken from the current state
+     */
+    public void advance(Transition transition) {
+        stop();
+        resumable = false;
+        int move = state.encode(transition);
+        state.apply(move);
+        if (trees == null) {
+            return;
+        }
+        for (Tree tree : trees) {
+            if (!tree.empty()) {
+                tree.advance(move);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables transpositions, stopping any search in progress. With transpositions enabled, every node
+     * reaching the same state (as identified by {@link State#key()}) - for instance after the same votes cast in a
+     * different order - shares its statistics with the others through a table, so that each playout informs all of
+     * them. Each tree has its own table, holding a fixed number of states and replacing old states with new ones as
+     * needed. The trees built so far are discarded.
+     *
+     * @param entries the number of states to hold, over all of the trees, or zero to disable transpositions
+     */
+    public void transpositions(int entries) {
+        stop();
+        transpositions = entries;
+        if (trees != null) {
+            for (Tree tree : trees) {
+                tree.clear();
+                tree.transpositions(table(trees.length));
+            }
+        }
+    }
+
+    /**
+     * @param trees the number of trees
+     * @return a new transposition table for one of the trees, or {@code null} if transpositions are disabled
+     */
+    private Transpositions table(int trees) {
+        return transpositions > 0 ? new Transpositions(transpositions / trees, state.numTeams()) : null;
+    }
+
+    /**
+     * Enables or disables progressive widening, stopping any search in progress. Normally every move from a state is
+     * tried once before the search starts to choose between them, which spreads the search thinly over states with
+     * hundreds of moves (such as a nomination in a large game). With progressive widening, a state visited n times
+     * only has its {@code ceil(coefficient * n^exponent)} most likely moves (by the weights of the opponent model)
+     * considered, so more moves are brought in as the state is searched more. The trees built so far are discarded.
+     *
+     * @param coefficient the number of moves considered at first, or zero to disable progressive widening
+     * @param exponent how quickly more moves are considered, between zero and one
+     */
+    public void widening(double coefficient, double exponent) {
+        stop();
+        wideningCoefficient = coefficient;
+        wideningExponent = exponent;
+        if (trees != null) {
+            for (Tree tree : trees) {
+                tree.clear();
+                tree.widening(coefficient, exponent);
+            }
+        }
+    }
+
+    /**
+     * Sets how children are picked during selection, stopping any search in progress. The default is
+     * {@link SelectionPolicy#UCB1}; a policy using priors, such as {@link SelectionPolicy.PUCT}, takes the weights of
+     * the opponent model (see {@link State#weightedMoves(Sampler)}) as each node's prior when it is expanded. The trees
+     * built so far are discarded.
+     *
+     * @param policy the selection policy
+     */
+    public void policy(SelectionPolicy policy) {
+        stop();
+        this.policy = policy;
+        if (trees != null) {
+            for (Tree tree : trees) {
+                tree.clear();
+                tree.policy(policy);
+            }
+        }
+    }
+
+    /**
+     * Turns measurement of the searches on or off, from the next search started. When off, nothing is measured and the
+     * search runs at full speed; when on, each playout is timed, which costs a few calls to {@link System#nanoTime()}.
+     *
+     * @param telemetry whether to measure each search
+     */
+    public void telemetry(boolean telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Gives the measurements of the current or last search, counted from when the search was started (so including any
+     * pondering the search continued from, even if the ponder had used up its playouts). Meant to be read once the
+     * search has stopped, for example after {@link #transition()}; if read while it is running, the counts may be
+     * slightly out of date.
+     *
+     * @return the measurements, or {@code null} if telemetry is off
+     */
+    public Telemetry telemetry() {
+        if (!telemetry) {
+            return null;
+        }
+        int nodes = 0;
+        if (trees != null) {
+            for (Tree tree : trees) {
+                nodes += tree.size();
+            }
+        }
+        long time = elapsed;
+        if (!futures.isEmpty()) {
+            //the workers' current run, which may have finished by itself
+            long end = finished.get();
+            time += (end != 0 ? end : System.nanoTime()) - started;
+        }
+        return new Telemetry(counters, time, nodes);
+    }
+
+    /**
+     * Begins the asynchronous search and returns immediately. Each worker thread has its own random number generator;
+     * depending on the {@link Parallelism} the workers either search their own trees or all search one shared tree.
+     * The search carries on until a move is requested.
      */
     public void search() {
-        root = new Node(state);
-        future = executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                searching = true;
-                //continue to sample until the user tells us to stop
-                while (searching) {
-                    select(state.copy(), root);
-                }
+        search(Long.MAX_VALUE);
+    }
+
+    /**
+     * Begins searching in the background while waiting for other players, as for {@link #search()}, but stops by
+     * itself after the given number of playouts so that it never uses more than a set amount of CPU. The work is kept
+     * when the transition actually taken is observed with {@link #advance(Transition)}, and carried on by the next
+     * call to {@link #transition(long, long)}.
+     *
+     * @param playouts the most playouts to make
+     */
+    public void ponder(long playouts) {
+        if (state.complete() || playouts <= 0) {
+            stop();
+            resumable = false;
+            return;
+        }
+        search(playouts);
+        resumable = true;
+    }
+
+    /**
+     * Begins the asynchronous search and returns immediately, as for {@link #search()}, but the workers stop by
+     * themselves after the given number of playouts.
+     *
+     * @param budget the number of playouts to make
+     */
+    private void search(long budget) {
+        stop();
+        counters = new ArrayList<Telemetry.Counters>(threads);
+        elapsed = 0;
+        playouts.set(0);
+        start(budget);
+    }
+
+    /**
+     * Starts the workers again after they have stopped, carrying on the same search: the playouts and measurements
+     * so far are kept.
+     *
+     * @param budget the total number of playouts after which the workers stop, counting those made so far
+     */
+    private void resume(long budget) {
+        stop();
+        start(budget);
+    }
+
+    /**
+     * Starts the workers searching, each one in its own tree or the shared tree.
+     *
+     * @param budget the total number of playouts after which the workers stop
+     */
+    private void start(long budget) {
+        final State initial = state;
+        if (trees == null) {
+            trees = new Tree[parallelism == Parallelism.ROOT ? threads : 1];
+            for (int i = 0; i < trees.length; ++i) {
+                trees[i] = new Tree(nodes / trees.length, initial.numTeams());
+                trees[i].transpositions(table(trees.length));
+                trees[i].widening(wideningCoefficient, wideningExponent);
+                trees[i].policy(policy);
+            }
+        }
+        for (Tree tree : trees) {
+            if (tree.empty()) {
+                tree.reset(initial);
+            }
+        }
+        futures = new ArrayList<Future<?>>(threads);
+        started = System.nanoTime();
+        finished.set(0);
+        this.budget = budget;
+        searching = true;
+        for (int i = 0; i < threads; ++i) {
+            final Tree tree = trees[i % trees.length];
+            final Random random = this.random.split();
+            final Sampler sampler = new Sampler();
+            final Telemetry.Counters counters = telemetry ? new Telemetry.Counters() : null;
+            if (counters != null) {
+                this.counters.add(counters);
             }
-        });
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    //continue to sample until the user tells us to stop, or the budget is used up
+                    int count = 0;
+                    while (searching) {
+                        if (counters == null) {
+                            select(initial.determinize(random, sampler), tree, random, sampler);
+                        } else {
+                            measure(initial, tree, random, sampler, counters);
+                        }
+                        if (++count == REPORT_INTERVAL) {
+                            count = 0;
+                            if (playouts.addAndGet(REPORT_INTERVAL) >= MCTS.this.budget) {
+                                searching = false;
+                            }
+                        }
+                    }
+                    playouts.addAndGet(count);
+                    //the last worker to finish leaves the latest time
+                    long now = System.nanoTime();
+                    for (long last = finished.get(); last == 0 || now - last > 0; last = finished.get()) {
+                        if (finished.compareAndSet(last, now)) {
+                            break;
+                        }
+                    }
+                }
+            }));
+        }
     }
 
     /**
@@ -89,22 +501,143 @@ public class MCTS {
      * @return the optimal transition to take from the root
      */
     public Transition transition() {
+        stop();
+        //the next decision starts a search of its own
+        resumable = false;
+        //get the best child according to the merged root statistics
+        return choice(trees);
+    }
+
+    /**
+     * Searches until a move can be chosen, and returns it. The search (or the search already in progress, if
+     * {@link #search()} has been called) stops as soon as any of these holds:
+     * <ul>
+     *     <li>there is only one possible move;</li>
+     *     <li>the time limit has passed;</li>
+     *     <li>the given number of playouts have been made;</li>
+     *     <li>the most visited move can no longer be overtaken by the second most visited in the playouts remaining,
+     *     estimated from the rate so far.</li>
+     * </ul>
+     *
+     * @param millis the most time to search for, in milliseconds
+     * @param playouts the most playouts to make, not counting those made before this method was called
+     * @return the optimal transition to take from the root
+     */
+    public Transition transition(long millis, long playouts) {
+        long start = System.currentTimeMillis();
+        long deadline = start + millis;
+        if (state.moves() == 1) {
+            //forced move - no need to search
+            stop();
+            resumable = false;
+            counters = Collections.emptyList();
+            elapsed = 0;
+            return state.decode(state.move(0));
+        }
+        long base = 0;
+        if (searching) {
+            //count from here, continuing the search already in progress
+            base = this.playouts.get();
+            budget = base + Math.min(playouts, Long.MAX_VALUE - base);
+        } else if (resumable) {
+            //a ponder has used up its playouts, and its workers have already finished - carry on from it
+            base = this.playouts.get();
+            resume(base + Math.min(playouts, Long.MAX_VALUE - base));
+        } else {
+            //nothing is searching
+            search(playouts);
+        }
+        long now;
+        while ((now = System.currentTimeMillis()) < deadline) {
+            long done = this.playouts.get() - base;
+            if (!searching) {
+                if (done >= playouts || executor.isShutdown()) {
+                    break;
+                }
+                //a worker stopped at the old budget just before it was raised - start them again for the rest
+                resume(base + Math.min(playouts, Long.MAX_VALUE - base));
+                continue;
+            }
+            //the playouts still to come: the rest of the budget, or as many as there's time for at the rate so far
+            long remaining = playouts - done;
+            if (now > start) {
+                remaining = Math.min(remaining, done * (deadline - now) / (now - start));
+            }
+            if (done > 0 && lead() > remaining) {
+                break;
+            }
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return transition();
+    }
+
+    /**
+     * Searches until a move can be chosen, and returns it, as for {@link #transition(long, long)} with no limit on the
+     * number of playouts.
+     *
+     * @param millis the most time to search for, in milliseconds
+     * @return the optimal transition to take from the root
+     */
+    public Transition transition(long millis) {
+        return transition(millis, Long.MAX_VALUE);
+    }
+
+    /**
+     * Shuts down the executor, stopping any search in progress.
+     */
+    public void shutdown() {
+        searching = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tells the workers to stop searching and waits until every worker's loop finishes, so the trees are no longer
+     * being modified.
+     *
+     * @throws IllegalStateException if a worker failed
+     */
+    private void stop() throws IllegalStateException {
         searching = false;
         try {
-            //wait until loop finishes
-            future.get();
+            for (Future<?> future : futures) {
+                future.get();
+            }
         } catch (Exception e) {
             throw new IllegalStateException(e);
+        } finally {
+            if (!futures.isEmpty()) {
+                //count the time up to when the last worker finished, not when the search was collected
+                long end = finished.get();
+                elapsed += (end != 0 ? end : System.nanoTime()) - started;
+            }
+            futures = Collections.emptyList();
         }
-        //get the best child according to the root child selection expand
-        return choice(root).transition;
     }
 
     /**
-     * Shuts down the executor.
+     * Works out how far the most visited move at the root is ahead of the second most visited, merging the trees as in
+     * {@link #choice(Tree[])}. Safe to call while the search is running.
+     *
+     * @return the difference in visits between the two most visited moves
      */
-    public void shutdown() {
-        executor.shutdownNow();
+    private long lead() {
+        Map<Integer, Integer> visits = visits(trees);
+        long best = 0;
+        long second = 0;
+        for (int count : visits.values()) {
+            if (count > best) {
+                second = best;
+                best = count;
+            } else if (count > second) {
+                second = count;
+            }
+        }
+        return best - second;
     }
 
     /**
@@ -112,271 +645,301 @@ public class MCTS {
      * to move through the tree structure.
      *
      * @param state the current state
-     * @param node the node to select from
+     * @param tree the tree to search
+     * @param random the worker's random number generator
+     * @param sampler the worker's sampler for weighted moves
      */
-    private void select(State state, Node node) {
-        Result pair = expand(state, node);
-        int[] scores = simulate(pair.state);
-        pair.node.backPropagate(scores);
+    private void select(State state, Tree tree, Random random, Sampler sampler) {
+        tree.visit(Tree.ROOT);
+        int node = expand(state, tree, Tree.ROOT, random, sampler);
+        int winner = simulate(state, random, sampler);
+        tree.backPropagate(node, winner);
+    }
+
+    /**
+     * Carries out one playout, as {@link #select(State, Tree, Random, Sampler)} does, timing each step.
+     *
+     * @param initial the state at the root
+     * @param tree the tree to search
+     * @param random the worker's random number generator
+     * @param sampler the worker's sampler for weighted moves
+     * @param counters the worker's measurements
+     */
+    private void measure(State initial, Tree tree, Random random, Sampler sampler, Telemetry.Counters counters) {
+        long start = System.nanoTime();
+        State state = initial.determinize(random, sampler);
+        long copied = System.nanoTime();
+        tree.visit(Tree.ROOT);
+        int node = expand(state, tree, Tree.ROOT, random, sampler);
+        long expanded = System.nanoTime();
+        int winner = simulate(state, random, sampler, counters);
+        long simulated = System.nanoTime();
+        tree.backPropagate(node, winner);
+        long end = System.nanoTime();
+        counters.record(tree.depth(node), copied - start, expanded - copied, simulated - expanded, end - simulated);
     }
 
     /**
      * Step two: expansion. Child node added to expand the tree.
      *
-     * @param state the current game state
+     * @param state the current game state, which is updated to the state at the returned node
+     * @param tree the tree being searched
      * @param node the node to expand from
-     * @return the new node with the corresponding state
+     * @param random the worker's random number generator
+     * @param sampler the worker's sampler, for drawing the outcomes of chance moves
+     * @return the new node
      */
-    private Result expand(State state, Node node) {
+    private int expand(State state, Tree tree, int node, Random random, Sampler sampler) {
         //continue to loop until reach end
         while (!state.complete()) {
-            //expand the node
-            if (!node.expanded()) {
-                node.expand(state);
+            //expand the node - if there's no room left in the tree, play out from here instead
+            if (!tree.expand(node, state, random, sampler)) {
+                return node;
             }
-            if (!node.unvisited.isEmpty()) {
-                //choose a random unvisited child node, add to list of children for that node, transition into node
-                Node child = node.unvisited.remove(RANDOM.nextInt(node.unvisited.size()));
-                node.children.add(child);
-                //change state based on this node's transition
-                state.transition(child.transition);
-                return new Result(state, child);
-            } else {
-                //visited all children of this node: so pick the best one
-                List<Node> best = findChildren(node);
-                if (best.isEmpty()) {
-                    //no choices at all - return what was passed in
-                    return new Result(state, node);
-                }
-                node = randomChoice(best);
-                //change state based on this node's transition
-                state.transition(node.transition);
+            if (state.chance()) {
+                //the outcome isn't ours to choose, so draw it from the opponent model and carry on down the tree
+                state.weightedMoves(sampler);
+                node = tree.outcome(node, sampler.sample(random), state);
+                state.apply(tree.move(node));
+                continue;
+            }
+            //claim and visit an unvisited child node, which are handed out in a random order
+            int child = tree.claim(node, state);
+            if (child != Tree.NONE) {
+                //change state based on this node's move
+                state.apply(tree.move(child));
+                return child;
             }
+            //visited all children of this node: so pick the best one
+            int best = findChild(tree, node, random);
+            if (best == Tree.NONE) {
+                //no choices at all - return what was passed in
+                return node;
+            }
+            node = best;
+            tree.visit(node);
+            //change state based on this node's move
+            state.apply(tree.move(node));
         }
-        return new Result(state, node);
+        return node;
     }
 
     /**
-     * Exploration/exploitation: uses the UCT method to pick the best
-     * child node(s). This returns a list and not a single node because
-     * multiple children may be equal.
+     * Exploration/exploitation: uses the selection policy to pick the best child node. If several children are equal,
+     * one of them is picked at random.
      *
+     * @param tree the tree being searched
      * @param node the node from which a child will be picked
-     * @return the best nodes to look at next
+     * @param random the worker's random number generator
+     * @return the best node to look at next, or {@link Tree#NONE} if the node has no children
      */
-    private List<Node> findChildren(Node node) {
+    private int findChild(Tree tree, int node, Random random) {
         double max = Double.NEGATIVE_INFINITY;
-        List<Node> list = new ArrayList<Node>();
-        for (Node child : node.children) {
-            double ucb = child.ucb1();
-            if (ucb > max) {
-                list.clear();
-                list.add(child);
-                max = ucb;
-            } else if (ucb == max) {
-                list.add(child);
+        int best = Tree.NONE;
+        int ties = 0;
+        for (int child = tree.first(node), end = child + tree.claimed(node); child < end; ++child) {
+            double value = tree.value(child);
+            if (value > max) {
+                best = child;
+                max = value;
+                ties = 1;
+            } else if (value == max && random.nextInt(++ties) == 0) {
+                //reservoir sampling, so that each of the equal children is equally likely
+                best = child;
             }
         }
-        return list;
+        return best;
     }
 
     /**
      * Step three: simulation. The game is played out from the given state to produce a final result.
      *
-     * @param _state the state to simulate from
-     * @return the final scores
+     * @param state the state to simulate from, which is played out to the end
+     * @param random the worker's random number generator
+     * @param sampler the worker's sampler, reused at each step
+     * @return the team which won
      */
-    private int[] simulate(State _state) {
-        State state = _state.copy();
+    private int simulate(State state, Random random, Sampler sampler) {
         //keep looping until game complete
         while (!state.complete()) {
-            //pick a random transition and update state by taking that transition
-            Map<Transition, Double> transitions = state.weightedTransitions();
-            Transition transition = randomChoice(transitions);
-            state.transition(transition);
+            //pick a random move, weighted by the opponent model, and update state by taking that move
+            state.weightedMoves(sampler);
+            state.apply(state.move(sampler.sample(random)));
         }
-        return state.scores();
+        return state.winner();
     }
 
-    private <T> T randomChoice(Map<T, Double> weightedMap) {
-        double totalWeight = 0;
-        T selected = null;
-        for (Map.Entry<T, Double> entry : weightedMap.entrySet()) {
-            double weight = entry.getValue();
-            double r = RANDOM.nextDouble() * (totalWeight + weight);
-            if (r >= totalWeight) {
-                selected = entry.getKey();
-            }
-            totalWeight += weight;
+    /**
+     * Plays a game out, as {@link #simulate(State, Random, Sampler)} does, timing how long is spent weighting the moves
+     * by the opponent model and how long applying them - which includes updating each resistance member's perspective
+     * after a mission.
+     *
+     * @param state the state to simulate from, which is played out to the end
+     * @param random the worker's random number generator
+     * @param sampler the worker's sampler, reused at each step
+     * @param counters the worker's measurements
+     * @return the team which won
+     */
+    private int simulate(State state, Random random, Sampler sampler, Telemetry.Counters counters) {
+        long weights = 0;
+        long update = 0;
+        long start = System.nanoTime();
+        while (!state.complete()) {
+            state.weightedMoves(sampler);
+            int move = state.move(sampler.sample(random));
+            long weighted = System.nanoTime();
+            state.apply(move);
+            long applied = System.nanoTime();
+            weights += weighted - start;
+            update += applied - weighted;
+            start = applied;
         }
-        return selected;
+        counters.simulated(weights, update);
+        return state.winner();
     }
 
     /**
-     * Chooses the most robust child as per MCTS algorithm specification. That is, the child node which has been visited
-     * most.
+     * Chooses the most robust child as per MCTS algorithm specification. That is, the child transition which has been
+     * visited most, summed over the roots of every worker's tree.
      *
-     * @param node the node for which the best child node needs to be picked
-     * @return the best child node
+     * @param trees the trees for which the best transition from the root needs to be picked
+     * @return the best transition from the root
      */
-    private Node choice(Node node) {
+    private Transition choice(Tree[] trees) {
+        Map<Integer, Integer> visits = visits(trees);
         int max = Integer.MIN_VALUE;
-        List<Node> list = new ArrayList<Node>();
-        for (Node child : node.children) {
-            max = updateMaximum(child, list, child.games, max);
+        List<Integer> list = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Integer> entry : visits.entrySet()) {
+            if (entry.getValue() > max) {
+                list.clear();
+                max = entry.getValue();
+                list.add(entry.getKey());
+            } else if (entry.getValue() == max) {
+                list.add(entry.getKey());
+            }
         }
-        return randomChoice(list);
+        return state.decode(randomChoice(list, random));
     }
 
     /**
-     * Convenience method since this is used often in the MCTS algorithm. Checks if a node is better than or
-     * as good as the current best node, if so adds it to the list and returns the new max value.
+     * Merges the visit counts of each root's children.
      *
-     * @param node the node to check
-     * @param list the list containing the maximum nodes
-     * @param value the node's value to check
-     * @param max the current maximum
-     * @return the new maximum
-     */
-    private static int updateMaximum(Node node, List<Node> list, int value, int max) {
-        if (value > max) {
-            list.clear();
-            max = value;
-            list.add(node);
-        } else if (value == max) {
-            list.add(node);
+     * @param trees the trees to merge
+     * @return the total visits for each move from the root
+     */
+    private static Map<Integer, Integer> visits(Tree[] trees) {
+        Map<Integer, Integer> visits = new HashMap<Integer, Integer>();
+        for (Tree tree : trees) {
+            if (tree.empty() || tree.first(Tree.ROOT) < 0) {
+                continue;
+            }
+            for (int child = tree.first(Tree.ROOT), end = child + tree.claimed(Tree.ROOT); child < end; ++child) {
+                int count = tree.visits(child);
+                if (count == 0) {
+                    continue;
+                }
+                Integer games = visits.get(tree.move(child));
+                visits.put(tree.move(child), games == null ? count : games + count);
+            }
         }
-        return max;
+        return visits;
     }
 
-    private static <T> T randomChoice(List<T> list) {
-        return list.get(RANDOM.nextInt(list.size()));
+    private static <T> T randomChoice(List<T> list, Random random) {
+        return list.get(random.nextInt(list.size()));
     }
 
     /**
-     * Represents a node in the game tree.
+     * Represents the state of the game at a given time. Implementations should override {@link Object#equals(Object)}
+     * (and {@link Object#hashCode()}) to compare game states by value, so that the search tree can be kept when the
+     * state passed to {@link MCTS#state(State)} is the one the tree has already been advanced to.
      */
-    private static class Node {
-
-        //holds each player's score (in The Resistance, simply 0=on losing team and 1=winning team)
-        private int[] score;
-        //the number of games carried out in this subtree
-        private int games;
-        //the transition performed on the previous state
-        private Transition transition;
-        //this node's children which have not been visited yet
-        private List<Node> unvisited;
-        //the children which HAVE been visited
-        private List<Node> children;
-        //the node above us in the tree
-        private Node parent;
-        //the current player at this node (c.f. minimax)
-        private int player;
+    public interface State {
 
         /**
-         * Creates the root node.
-         *
-         * @param state the initial state
+         * @return an exact copy of the state: actions performed on this copy should not affect the original in any way
          */
-        Node(State state) {
-            this.children = new ArrayList<Node>();
-            this.player = state.currentPlayer();
-            this.score = new int[state.numPlayers()];
-        }
+        State copy();
 
         /**
-         * Creates a node from acting on a state with a transition, having the given parent node.
+         * Gives a copy of the state in which everything hidden from the searching player (such as the other players'
+         * roles) is filled in at random, in proportion to how likely it is given what that player has seen - a
+         * determinization. Searching from a fresh determinization at each playout, with the tree keyed only by what
+         * the searching player can see, is information set search. States without hidden information just give a copy.
          *
-         * @param state the 'parent' state
-         * @param transition the transition to perform
-         * @param parent the node's parent
+         * @param random the worker's random number generator
+         * @param sampler the worker's sampler, which may be used to draw the hidden information
+         * @return a copy of the state, with any hidden information sampled
          */
-        Node(State state, Transition transition, Node parent) {
-            this.children = new ArrayList<Node>();
-            this.parent = parent;
-            this.transition = transition;
-            State copy = state.copy();
-            copy.transition(transition);
-            this.player = copy.currentPlayer();
-            this.score = new int[state.numPlayers()];
-        }
+        State determinize(Random random, Sampler sampler);
 
         /**
-         * @return whether this node has been expanded yet
+         * @return the transitions possible from this state
          */
-        boolean expanded() {
-            return unvisited != null;
-        }
+        List<Transition> transitions();
 
         /**
-         * Calculates the UCB1 formula for the node.
-         * See https://en.wikipedia.org/wiki/Monte_Carlo_tree_search#Exploration_and_exploitation
-         *
-         * @return the UCB1 value
+         * @return the transitions possible from this state, weighted by their probability of being chosen by a
+         *         typical player (requires opponent model)
          */
-        double ucb1() {
-            return (double) score[parent.player] / games + Math.sqrt(2 * Math.log(parent.games + 1) / games);
-        }
+        Map<Transition, Double> weightedTransitions();
 
         /**
-         * Back-propagates a score all the way up the tree.
+         * Modifies this state by performing the given transition.
          *
-         * @param score the array of player scores
+         * @param transition the transition to carry out
          */
-        void backPropagate(int[] score) {
-            this.games++;
-            for (int i = 0; i < score.length; i++)
-                this.score[i] += score[i];
-            if (parent != null) {
-                parent.backPropagate(score);
-            }
-        }
+        void transition(Transition transition);
 
         /**
-         * Expands this node.
+         * The search itself works on moves: transitions encoded as integers, so that it never has to allocate
+         * transition objects. A move only has meaning in the state it is generated from.
          *
-         * @param state the state to expand from
+         * @return the number of moves possible from this state
          */
-        void expand(State state) {
-            List<Transition> transitions = state.transitions();
-            unvisited = new ArrayList<Node>();
-            //for each possible transition, create a new child by acting on the state with that transition
-            // and then add them to the unvisited children list
-            for (Transition transition : transitions) {
-                Node tempState = new Node(state, transition, this);
-                unvisited.add(tempState);
-            }
-        }
+        int moves();
 
-    }
+        /**
+         * @param index an index from zero up to (but not including) {@link #moves()}
+         * @return the move at the given index
+         */
+        int move(int index);
 
-    /**
-     * Represents the state of the game at a given time.
-     */
-    public interface State {
+        /**
+         * Fills the given sampler with the weight of each move, in index order, so that a move can be picked in
+         * proportion to its probability of being chosen by a typical player (requires opponent model).
+         *
+         * @param sampler the sampler to fill, which is cleared first
+         */
+        void weightedMoves(Sampler sampler);
 
         /**
-         * @return an exact copy of the state: actions performed on this copy should not affect the original in any way
+         * Modifies this state by performing the given move.
+         *
+         * @param move the move to carry out
          */
-        State copy();
+        void apply(int move);
 
         /**
-         * @return the transitions possible from this state
+         * @param transition a transition possible from this state
+         * @return the transition encoded as a move
          */
-        List<Transition> transitions();
+        int encode(Transition transition);
 
         /**
-         * @return the transitions possible from this state, weighted by their probability of being chosen by a
-         *         typical player (requires opponent model)
+         * @param move a move possible from this state
+         * @return the move as a transition
          */
-        Map<Transition, Double> weightedTransitions();
+        Transition decode(int move);
 
         /**
-         * Modifies this state by performing the given transition.
+         * A chance move is one whose outcome isn't chosen by any player the search plays for, such as the combined
+         * votes of the other players. The search doesn't try to choose the best outcome at such a state, but draws
+         * one at random using the weights from {@link #weightedMoves(Sampler)}.
          *
-         * @param transition the transition to carry out
+         * @return whether the next move is a chance move
          */
-        void transition(Transition transition);
+        boolean chance();
 
         /**
          * @return whether the game is over
@@ -398,6 +961,33 @@ public class MCTS {
          */
         int[] scores();
 
+        /**
+         * Gives a 64-bit hash of the state for the transposition table: states which are equal must have equal keys,
+         * and unequal states should be very unlikely to. Used only if transpositions are enabled with
+         * {@link MCTS#transpositions(int)}.
+         *
+         * @return the state's key
+         */
+        long key();
+
+        /**
+         * @return the number of teams in the game
+         */
+        int numTeams();
+
+        /**
+         * @param player a player index
+         * @return the team the player is on - an integer ranging from 0 up to (but not including) {@link #numTeams()}
+         */
+        int team(int player);
+
+        /**
+         * The search only needs to know who won a finished game, which unlike {@link #scores()} needs no allocation.
+         *
+         * @return the team which won the game, when the game is over
+         */
+        int winner();
+
     }
 
     /**
@@ -406,17 +996,20 @@ public class MCTS {
     public interface Transition {}
 
     /**
-     * A convenience class for holding a node with an associated state.
+     * The ways in which the worker threads can share a search.
      */
-    private class Result {
+    public enum Parallelism {
 
-        private final State state;
-        private final Node node;
+        /**
+         * Each worker grows its own independent tree from the same initial state, and the visit counts of the root
+         * children are merged when a move is requested.
+         */
+        ROOT,
 
-        Result(State state, Node node) {
-            this.state = state;
-            this.node = node;
-        }
+        /**
+         * Every worker searches one shared tree, using virtual losses to spread the workers over different branches.
+         */
+        TREE
 
     }
 
@@ -1,11 +1,7 @@
 package search;
 
-import bayes.GameState;
-
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
 
 /**
  * Holds bayes suspicions for all other players from the perspective of a resistance member. Lightweight version
@@ -13,11 +9,19 @@ import java.util.Map;
  */
 public class Perspective {
 
+    //each thread's array for gathering the suspicions of several perspectives into one batched update
+    private static final ThreadLocal<double[]> BATCH = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[10 * 10];
+        }
+    };
+
     //who i am
     private final char me;
 
-    //holds Bayesian-updated probabilities of spyness for each player
-    private final Map<Character, Double> suspicion;
+    //holds Bayesian-updated probabilities of spyness for each player, in the same order as the players
+    private final double[] suspicion;
 
     //every player in the game
     private final char[] players;
@@ -35,12 +39,12 @@ public class Perspective {
      */
     public Perspective(char me, char[] players, int spies) {
         this.me = me;
-        this.suspicion = new HashMap<Character, Double>();
+        this.suspicion = new double[players.length];
         this.players = players;
         this.numSpies = spies;
         double initial = (double) spies / (players.length - 1);
-        for (char id : players) {
-            suspicion.put(id, id == me ? 0 : initial);
+        for (int i = 0; i < players.length; ++i) {
+            suspicion[i] = players[i] == me ? 0 : initial;
         }
     }
 
@@ -51,7 +55,7 @@ public class Perspective {
      */
     public Perspective(Perspective perspective) {
         this.me = perspective.me;
-        this.suspicion = new HashMap<Character, Double>(perspective.suspicion);
+        this.suspicion = perspective.suspicion.clone();
         this.players = perspective.players;
         this.numSpies = perspective.numSpies;
     }
@@ -61,191 +65,95 @@ public class Perspective {
      * @return the probability that the player is a spy
      */
     public double lookup(char c) {
-        return suspicion.get(c);
+        return suspicion[index(c)];
     }
 
     /**
-     * Updates the suspicion for each player based on the current round evidence - i.e. number of sabotages.
+     * Updates the suspicion for each player based on the current round evidence - i.e. number of sabotages. The
+     * work is done by {@link SpySets#update(double[], int, int, int, int, int)}, in a single pass over every possible
+     * set of spies.
      *
      * @param mission the players on the mission
      * @param traitors the number of traitors
      */
     public void update(char[] mission, int traitors) {
-        Map<Character, Double> updated = new HashMap<Character, Double>(suspicion.size());
-        for (char id : players) {
-            double pa = suspicion.get(id);
-            suspicion.put(id, 1.0);
-            double pba = computeProbabilityOfMissionSabotages(mission, traitors);
-            suspicion.put(id, pa);
-            updated.put(id, bayes(pa, 1.0, pba));
-        }
-        double total = 0.0;
-        for (Map.Entry<Character, Double> entry : updated.entrySet()) {
-            total += entry.getValue();
-        }
-        for (Map.Entry<Character, Double> entry : updated.entrySet()) {
-            double newValue = entry.getValue() * numSpies / total;
-            suspicion.put(entry.getKey(), Math.max(0, Math.min(newValue, 1)));
-        }
+        SpySets.update(suspicion, 0, players.length, numSpies, mask(mission), traitors);
     }
 
     /**
-     * Opponent model - the probability of a spy sabotaging given the chance.
+     * Updates several perspectives on the same game at once, as for {@link #update(char[], int)}. The spy sets are
+     * only enumerated once for all of them (see {@link SpySets#update(double[], int, int, int, int, int, int)}).
      *
-     * @param spiesOnMission the number of spies on the mission
-     * @return the probability of a spy sabotaging a mission
+     * @param perspectives the perspectives, all of the same game
+     * @param mission the players on the mission
+     * @param traitors the number of traitors
      */
-    private double betrayProbability(int spiesOnMission) {
-        return 0.95 / spiesOnMission;
+    public static void update(Collection<Perspective> perspectives, char[] mission, int traitors) {
+        if (perspectives.isEmpty()) {
+            return;
+        }
+        Perspective first = perspectives.iterator().next();
+        int n = first.players.length;
+        double[] suspicion = BATCH.get();
+        if (suspicion.length < perspectives.size() * n) {
+            suspicion = new double[perspectives.size() * n];
+            BATCH.set(suspicion);
+        }
+        int offset = 0;
+        for (Perspective perspective : perspectives) {
+            System.arraycopy(perspective.suspicion, 0, suspicion, offset, n);
+            offset += n;
+        }
+        SpySets.update(suspicion, 0, perspectives.size(), n, first.numSpies, first.mask(mission), traitors);
+        offset = 0;
+        for (Perspective perspective : perspectives) {
+            System.arraycopy(suspicion, offset, perspective.suspicion, 0, n);
+            offset += n;
+        }
     }
 
     /**
-     * Computes the update probability given evidence using Bayes rule.
-     *
-     * @param pa P(A): the original probability, in this case the probability that the player is a spy
-     * @param pb P(B): the probability of the event providing new evidence to have occurred, in this case the
-     *           probability of the number of sabotages occurring
-     * @param pba P(B|A): the probability of event B, given event A - in this case the probability of the number of
-     *            sabotages occurring, given that the player is a spy
-     * @return the updated probability of event A given evidence B - that is, P(A|B)
+     * @param mission some players
+     * @return the bitmask of the players' indices
      */
-    private double bayes(double pa, double pb, double pba) {
-        if (pa == 0 || pba == 0) return 0;
-        return pa * pba / pb;
+    private int mask(char[] mission) {
+        int mask = 0;
+        for (char c : mission) {
+            mask |= 1 << index(c);
+        }
+        return mask;
     }
 
     /**
-     * This method is for computing P(B) and P(B|A): it calculates the probability of the number of sabotages that
-     * happened on this mission. It does this by iterating over all combinations of spies on the team, and within that
-     * team, all combinations of each spy choosing to sabotage or not. This sounds computationally expensive but is
-     * feasible for this game: with 10 players there are 4 spies, so there are (10 choose 4) possible combinations
-     * of spies and up to 2^4 combinations for which spies choose to sabotage/not sabotage a mission: resulting in a
-     * total of 3360 possibilities as an absolute maximum.
-     *
-     * @param mission the array of players in the mission
-     * @param traitors the number of sabotages
-     * @return the probability of the mission resulting in the number of sabotages that occurred
-     */
-    private double computeProbabilityOfMissionSabotages(char[] mission, int traitors) {
-        return computeProbabilityOfMissionSabotages(mission, numSpies, traitors, 0, 0, new boolean[players.length]);
-    }
-    /**
-     * The recursive method for {@link #computeProbabilityOfMissionSabotages(char[], int)}.
-     *
-     * @param mission the players on the mission
-     * @param numSpies the total number of spies
-     * @param traitors the number of sabotages
-     * @param start recursive parameter to help iterate over combinations - pass 0
-     * @param curr recursive parameter to help iterate over combinations - pass 0
-     * @param spy recursive parameter to help iterate over combinations - pass a boolean array filled with the
-     *             value {@code false} of size {@link GameState#numberOfPlayers()}
-     * @return the probability of the mission resulting in the number of sabotages that occurred
+     * @param c the player identifier
+     * @return the index of the player
      */
-    private double computeProbabilityOfMissionSabotages(char[] mission, int numSpies, int traitors, int start, int curr, boolean[] spy) {
-        //base case - have reached the correct combination size
-        if (curr == numSpies) {
-            //create list of spies and then iterate over all possibilities for which spies did/didn't sabotage
-            List<Character> spies = new LinkedList<Character>();
-            for (int i = 0; i < players.length; ++i) if (spy[i]) spies.add(players[i]);
-            return sumSabotageCombinations(spies, mission, traitors, 0, 0, new boolean[spies.size()]);
+    private int index(char c) {
+        for (int i = 0; i < players.length; ++i) {
+            if (players[i] == c) {
+                return i;
+            }
         }
-
-        //base case - ensure not over the array size
-        if (start == players.length) return 0;
-
-        //recurse - set the player in the first index to be a spy
-        spy[start] = true;
-        double tmp = computeProbabilityOfMissionSabotages(mission, numSpies, traitors, start + 1, curr + 1, spy);
-
-        //recurse - set the player in the first index to be a true resistance member
-        spy[start] = false;
-        return tmp + computeProbabilityOfMissionSabotages(mission, numSpies, traitors, start + 1, curr, spy);
+        throw new IllegalArgumentException("unknown player: " + c);
     }
 
     /**
-     * If a spy is in a team, it has some probability to sabotage the mission. This method iterates over a given
-     * spy combination and considers all combinations of which spies sabotaged/didn't sabotage. It sums the probabilities
-     * and returns the total probability for the given number of sabotages to have occurred in a mission, assuming a certain
-     * spy combination.
-     *
-     * @param spies the assumed list of spies (of size {@link bayes.GameState#numberOfSpies()})
-     * @param mission the mission that just occurred
-     * @param traitors the number of sabotages
-     * @param start recursive parameter to help iterate over combinations - pass 0
-     * @param curr recursive parameter to help iterate over combinations - pass 0
-     * @param sabotaged recursive parameter to help iterate over combinations - pass a boolean array filled with the
-     *                     value {@code false} of size {@link bayes.GameState#numberOfSpies()}
-     * @return the total probability for a given set of spies to have sabotaged the number of times that the mission
-     * was sabotaged
+     * {@inheritDoc}
      */
-    private double sumSabotageCombinations(List<Character> spies, char[] mission, int traitors, int start, int curr, boolean sabotaged[]) {
-        //base case - have reached the correct combination size
-        if (curr == traitors) {
-
-            //ensure that the number of sabotages in this combination caused by spies IN THE TEAM corresponds to the
-            // number of sabotages that actually occurred
-            int numSabotaged = 0;
-            for (int i = 0; i < sabotaged.length; ++i) {
-                if (contains(mission, spies.get(i)) && sabotaged[i])
-                    numSabotaged++;
-            }
-            if (numSabotaged != traitors) return 0;
-
-            List<Character> spiesOnMission = new LinkedList<Character>();
-            for (Character c : spies) if (contains(mission, c)) spiesOnMission.add(c);
-
-            double total = 1.0;
-            for (int i = 0; i < sabotaged.length; ++i) {
-                Character c = spies.get(i);
-                double s = suspicion.get(c);
-                if (contains(mission, c)) {
-                    if (sabotaged[i]) {
-                        //spy on mission and spy sabotaged
-                        total *= s * betrayProbability(spiesOnMission.size());
-                    } else {
-                        //spy on mission but didn't sabotage
-                        total *= s * (1 - betrayProbability(spiesOnMission.size()));
-                    }
-                } else {
-                    //spy not on mission
-                    total *= s;
-                }
-            }
-
-            for (Character c : players) {
-                if (!spies.contains(c)) {
-                    //not a spy
-                    total *= (1 - suspicion.get(c));
-                }
-            }
-
-            return total;
-        }
-
-        //base case - ensure not over the array size
-        if (start == sabotaged.length) return 0;
-
-        //recurse - set the spy in the start index to have sabotaged
-        sabotaged[start] = true;
-        double tmp = sumSabotageCombinations(spies, mission, traitors, start + 1, curr + 1, sabotaged);
-
-        //recurse - set the spy in the start index not to have sabotaged
-        sabotaged[start] = false;
-        return tmp + sumSabotageCombinations(spies, mission, traitors, start + 1, curr, sabotaged);
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Perspective that = (Perspective) o;
+        return me == that.me && numSpies == that.numSpies && Arrays.equals(suspicion, that.suspicion);
     }
 
     /**
-     * Convenience method for determining if a character array contains a character.
-     *
-     * @param array the haystack
-     * @param c the needle
-     * @return whether the character array contains the specified character
+     * {@inheritDoc}
      */
-    private boolean contains(char[] array, char c) {
-        for (char other : array)
-            if (other == c)
-                return true;
-        return false;
+    @Override
+    public int hashCode() {
+        return 31 * me + Arrays.hashCode(suspicion);
     }
 
     /**
@@ -253,7 +161,12 @@ public class Perspective {
      */
     @Override
     public String toString() {
-        return suspicion.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < players.length; ++i) {
+            if (i > 0) sb.append(", ");
+            sb.append(players[i]).append('=').append(suspicion[i]);
+        }
+        return sb.append('}').toString();
     }
 
 
@@ -0,0 +1,113 @@
+package search;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size cache of the opponent model's nomination weights, shared by every state and every search thread. A
+ * resistance leader's weights depend only on the round, the leader and the leader's suspicions, and the same
+ * suspicions come up again and again over thousands of playouts, so the weights are worked out once and then looked
+ * up. The suspicions are rounded to a multiple of {@code 1 / QUANTA} for the key, so suspicions which differ only by
+ * rounding error share an entry.
+ * <p>
+ * Each key maps to a single slot, and a new entry simply replaces whatever was in its slot. Entries are immutable, so
+ * no locking is needed.
+ */
+final class PolicyCache {
+
+    /**
+     * The number of steps each suspicion is rounded to between zero and one.
+     */
+    static final int QUANTA = 1 << 10;
+
+    //the entry in each slot, or null if the slot is empty
+    private final AtomicReferenceArray<Entry> entries;
+
+    //the number of slots less one, to map keys to slots
+    private final int mask;
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param entries the number of entries the cache can hold, rounded up to a power of two
+     */
+    PolicyCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries - 1)) << 1;
+        this.entries = new AtomicReferenceArray<Entry>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Starts the key of a nomination: the suspicions must then be added with {@link #key(long, double)}, in player
+     * order.
+     *
+     * @param players the number of players in the game
+     * @param round the round
+     * @param leader the index of the leader
+     * @return the key so far
+     */
+    static long key(int players, int round, int leader) {
+        return SplitMix.hash((long) players << 40 | (long) round << 32 | leader);
+    }
+
+    /**
+     * Adds the leader's suspicion of the next player to a key.
+     *
+     * @param key the key so far
+     * @param suspicion the suspicion
+     * @return the new key
+     */
+    static long key(long key, double suspicion) {
+        return SplitMix.hash(key ^ Math.round(suspicion * QUANTA));
+    }
+
+    /**
+     * @param key the key of a nomination
+     * @return the running totals of the nomination weights, which must not be modified, or {@code null} if they aren't
+     *         in the cache
+     */
+    double[] get(long key) {
+        Entry entry = entries.get(slot(key));
+        return entry != null && entry.key == key ? entry.totals : null;
+    }
+
+    /**
+     * Adds the weights of a nomination to the cache.
+     *
+     * @param key the key of the nomination
+     * @param totals the running totals of the nomination weights, which must not be modified from now on
+     */
+    void put(long key, double[] totals) {
+        entries.set(slot(key), new Entry(key, totals));
+    }
+
+    /**
+     * @param key a key
+     * @return the slot the key is held in
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * The weights of one nomination.
+     */
+    private static final class Entry {
+
+        //the key of the nomination
+        private final long key;
+
+        //the running totals of the weights
+        private final double[] totals;
+
+        /**
+         * @param key the key of the nomination
+         * @param totals the running totals of the weights
+         */
+        private Entry(long key, double[] totals) {
+            this.key = key;
+            this.totals = totals;
+        }
+
+    }
+
+}
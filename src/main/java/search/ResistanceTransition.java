@@ -113,4 +113,78 @@ public abstract class ResistanceTransition implements MCTS.Transition {
 
     }
 
+    /**
+     * The votes of every player other than the searching player, taken together: the number of them who voted for
+     * the team. Used when votes are modelled as a single chance outcome.
+     */
+    public static class Votes extends ResistanceTransition {
+
+        private final int yes;
+
+        public Votes(int yes) {
+            this.yes = yes;
+        }
+
+        public int yes() {
+            return yes;
+        }
+
+        @Override
+        public String toString() {
+            return "Votes[" + yes + "]";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Votes votes = (Votes) o;
+            return yes == votes.yes;
+
+        }
+
+        @Override
+        public int hashCode() {
+            return yes;
+        }
+
+    }
+
+    /**
+     * The sabotages of every player other than the searching player, taken together: the number of them who
+     * sabotaged the mission. Used when sabotages are modelled as a single chance outcome.
+     */
+    public static class Sabotages extends ResistanceTransition {
+
+        private final int count;
+
+        public Sabotages(int count) {
+            this.count = count;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Sabotages[" + count + "]";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Sabotages sabotages = (Sabotages) o;
+            return count == sabotages.count;
+
+        }
+
+        @Override
+        public int hashCode() {
+            return count;
+        }
+
+    }
+
 }
@@ -0,0 +1,136 @@
+package search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks indices at random with probability proportional to their weights, using a single random number per sample.
+ * The weights are held as running totals, so a sample is a binary search over them. A sampler is meant to be filled
+ * and sampled over and over by the same thread, so it reuses its storage rather than allocating at each step.
+ */
+public final class Sampler {
+
+    //the running totals: totals[i] is the sum of the weights of indices 0 to i - either the buffer, or an array
+    // shared with someone else which must not be written to
+    private double[] totals;
+
+    //the sampler's own storage for running totals, kept while shared totals are in use so it can be reused after
+    private double[] buffer;
+
+    //the number of indices which can be sampled
+    private int size;
+
+    //whether every index has the same weight, in which case the totals are not used
+    private boolean uniform;
+
+    /**
+     * Creates a new, empty sampler.
+     */
+    public Sampler() {
+        this.buffer = new double[16];
+        this.totals = buffer;
+    }
+
+    /**
+     * Removes every weight, ready to be filled again.
+     */
+    public void clear() {
+        size = 0;
+        uniform = false;
+        totals = buffer;
+    }
+
+    /**
+     * Adds the next index, with the given weight.
+     *
+     * @param weight the weight of the index, which must not be negative
+     */
+    public void add(double weight) {
+        if (size == buffer.length) {
+            buffer = Arrays.copyOf(buffer, size * 2);
+        }
+        buffer[size] = size == 0 ? weight : buffer[size - 1] + weight;
+        totals = buffer;
+        ++size;
+    }
+
+    /**
+     * Replaces the weights with the given number of indices, each with the same weight.
+     *
+     * @param size the number of indices
+     */
+    public void uniform(int size) {
+        this.size = size;
+        this.uniform = true;
+    }
+
+    /**
+     * Replaces the weights with the given running totals, without copying them. The array is never modified, so the
+     * same totals can be shared between samplers (and threads).
+     *
+     * @param totals the running totals of the weights, as produced by {@link #accumulate(double[])}
+     */
+    public void totals(double[] totals) {
+        this.totals = totals;
+        this.size = totals.length;
+        this.uniform = false;
+    }
+
+    /**
+     * @return the number of indices which can be sampled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index an index from zero up to (but not including) {@link #size()}
+     * @return the weight of the index
+     */
+    public double weight(int index) {
+        if (uniform) {
+            return 1.0;
+        }
+        return index == 0 ? totals[0] : totals[index] - totals[index - 1];
+    }
+
+    /**
+     * Picks an index at random, with probability proportional to its weight. If every weight is zero, the last index
+     * is picked.
+     *
+     * @param random the random number generator to use
+     * @return the chosen index
+     */
+    public int sample(Random random) {
+        if (uniform) {
+            return random.nextInt(size);
+        }
+        double r = random.nextDouble() * totals[size - 1];
+        //find the first index whose running total exceeds r
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (totals[mid] > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Turns an array of weights into running totals, in place, so that they can be passed to {@link #totals(double[])}.
+     *
+     * @param weights the weights
+     * @return the same array, now holding running totals
+     */
+    public static double[] accumulate(double[] weights) {
+        for (int i = 1; i < weights.length; ++i) {
+            weights[i] += weights[i - 1];
+        }
+        return weights;
+    }
+
+}
@@ -1,7 +1,6 @@
 package search;
 
 import core.Agent;
-import bayes.BayesResistanceAgent;
 
 /**
  * The Monte Carlo Search agent.
@@ -14,12 +13,25 @@ public class SearchAgent implements Agent {
     //all get_ and do_ methods are just passed to this
     private Agent delegate;
 
+    //the seed for the search
+    private final long seed;
+
     /**
      * Creates a new Search agent.
      */
     public SearchAgent() {
+        this(new SplitMix().nextLong());
+    }
+
+    /**
+     * Creates a new Search agent whose searches are seeded from the given seed.
+     *
+     * @param seed the seed for the search
+     */
+    public SearchAgent(long seed) {
         initialised = false;
         delegate = null;
+        this.seed = seed;
     }
 
     /**
@@ -28,7 +40,7 @@ public class SearchAgent implements Agent {
     @Override
     public void get_status(String name, String players, String spies, int mission, int failures) {
         if (!initialised) {
-            delegate = (spies.contains("?") ? new BayesResistanceAgent() : new SearchSpyAgent());
+            delegate = (spies.contains("?") ? new SearchResistanceAgent(seed) : new SearchSpyAgent(seed));
             initialised = true;
         }
         delegate.get_status(name, players, spies, mission, failures);
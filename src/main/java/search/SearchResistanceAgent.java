@@ -0,0 +1,65 @@
+package search;
+
+/**
+ * The resistance component of {@link SearchAgent}, using information set Monte Carlo Tree Search. We don't know who
+ * the spies are, so each playout is made with a set of spies drawn from our suspicions (see
+ * {@link CompactGameState#determinize(java.util.Random, Sampler)}), and every playout shares one tree, whose nodes
+ * hold only what we can see. All the workers search that one tree.
+ */
+public class SearchResistanceAgent extends AbstractSearchAgent {
+
+    /**
+     * Creates a new resistance agent with a random seed.
+     */
+    public SearchResistanceAgent() {
+        this(new SplitMix().nextLong());
+    }
+
+    /**
+     * Creates a new resistance agent whose searches are seeded from the given seed.
+     *
+     * @param seed the seed for the search
+     */
+    public SearchResistanceAgent(long seed) {
+        super(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CompactGameState state(String name, String players, String spies) {
+        //the game state from the perspective of us (a resistance member - the spies are hidden), in which only our own
+        // moves are decisions - the other players' are chance outcomes
+        return new CompactGameState(players, spies.length(), name.charAt(0));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected MCTS.Parallelism parallelism() {
+        return MCTS.Parallelism.TREE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean do_Betray() {
+        //only asked of spies
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void get_Traitors(int traitors) {
+        //the search models our (forced) choice not to sabotage, followed by the number of sabotages
+        observe(new ResistanceTransition.Sabotage(false));
+        observe(new ResistanceTransition.Sabotages(traitors));
+        startPondering();
+    }
+
+}
@@ -1,128 +1,56 @@
 package search;
 
-import core.Agent;
-
 /**
  * The spy component of {@link SearchAgent}, using Monte Carlo Tree Search.
  */
-public class SearchSpyAgent implements Agent {
-
-    //we only have one second to make our move... This is the amount of time we sleep the game thread in
-    // order to search for as long as possible.
-    private static final int DELAY_TIME = 900;
-
-    //whether the agent has been started yet.
-    private boolean initialised;
+public class SearchSpyAgent extends AbstractSearchAgent {
 
-    //the game state from the perspective of us (a spy - i.e. perfect information)
-    private GameState state;
-
-    //the searcher, used to pick our moves.
-    private MCTS searcher;
+    //whether we sabotaged the current mission
+    private boolean betrayed;
 
     /**
-     * {@inheritDoc}
+     * Creates a new spy agent with a random seed.
      */
-    @Override
-    public void get_status(String name, String players, String spies, int mission, int failures) {
-        if (!initialised) {
-            state = new GameState(players, spies, name.charAt(0));
-            searcher = new MCTS(state);
-            initialised = true;
-        }
-        //update the state
-        state.round(mission);
-        state.failures(failures);
-        state.nominationAttempt(1);
-        state.traitors(0);
-        state.phase(GameState.Phase.NOMINATION);
-
-        //shut down the searcher so that the program can end (otherwise has random thread waiting so program doesn't
-        // terminate)
-        if (state.complete() && searcher != null) {
-            searcher.shutdown();
-        }
+    public SearchSpyAgent() {
+        this(new SplitMix().nextLong());
     }
 
     /**
-     * {@inheritDoc}
+     * Creates a new spy agent whose searches are seeded from the given seed.
+     *
+     * @param seed the seed for the search
      */
-    @Override
-    public String do_Nominate(int number) {
-        //update game state
-        state.phase(GameState.Phase.NOMINATION);
-        state.currentLeader(state.players().indexOf(state.me()));
-
-        //start the search
-        searcher.state(state);
-        searcher.search();
-
-        //delay as long as possible
-        sleep(DELAY_TIME);
-
-        //get the best move
-        MCTS.Transition transition = searcher.transition();
-
-        //perform the move
-        return ((ResistanceTransition.Nomination) transition).selection();
+    public SearchSpyAgent(long seed) {
+        super(seed);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void get_ProposedMission(String leader, String mission) {
-        //update game state
-        state.currentLeader(state.players().indexOf(leader));
-        state.mission(mission);
-        state.phase(GameState.Phase.VOTING);
-        state.currentPlayer(state.players().indexOf(state.me()));
-
-        state.nominationAttempt(state.nominationAttempt() + 1);
+    protected CompactGameState state(String name, String players, String spies) {
+        //the game state from the perspective of us (a spy - i.e. perfect information)
+        CompactGameState state = new CompactGameState(players, spies, name.charAt(0));
+        //only our own votes and sabotages are decisions - the other players' are chance outcomes
+        state.aggregate(true);
+        return state;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean do_Vote() {
-        searcher.state(state);
-        searcher.search();
-
-        //delay as long as possible
-        sleep(DELAY_TIME);
-
-        //get the best move
-        MCTS.Transition transition = searcher.transition();
-
-        //perform the move
-        return ((ResistanceTransition.Vote) transition).yes();
+    protected MCTS.Parallelism parallelism() {
+        return MCTS.Parallelism.ROOT;
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void get_Votes(String yays) {
-        //update state
-        state.nominationAttempt(state.nominationAttempt() + 1);
-        state.phase(GameState.Phase.MISSION);
-    }
-
-    private String lastMission;
-
     /**
      * {@inheritDoc}
      */
     @Override
     public void get_Mission(String mission) {
-        state.nominationAttempt(1);
-        lastMission = mission;
-        //update state
-        state.mission(mission);
-        state.phase(GameState.Phase.MISSION);
-        state.currentPlayer(state.players().indexOf(state.me()));
-        state.traitors(0);
+        betrayed = false;
+        super.get_Mission(mission);
     }
 
     /**
@@ -130,18 +58,9 @@ public class SearchSpyAgent implements Agent {
      */
     @Override
     public boolean do_Betray() {
-        searcher.state(state);
-        //start the search
-        searcher.search();
-
-        //delay as long as possible
-        sleep(DELAY_TIME);
-
-        //get the best move
-        MCTS.Transition transition = searcher.transition();
-
         //perform the move
-        return ((ResistanceTransition.Sabotage) transition).sabotage();
+        betrayed = ((ResistanceTransition.Sabotage) decide()).sabotage();
+        return betrayed;
     }
 
     /**
@@ -149,37 +68,11 @@ public class SearchSpyAgent implements Agent {
      */
     @Override
     public void get_Traitors(int traitors) {
-        //update state
-        state.traitors(traitors);
-        state.update(lastMission, traitors);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public String do_Accuse() {
-        //don't bother
-        return "";
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void get_Accusation(String accuser, String accused) {
-        //ignore
-    }
-
-    /**
-     * Sleeps the current thread, ignores exceptions from interrupts.
-     *
-     * @param ms the time to sleep in milliseconds
-     */
-    private void sleep(int ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ignore) {}
+        //the search models our choice, followed by the number of other spies on the mission who sabotaged
+        observe(new ResistanceTransition.Sabotage(betrayed));
+        observe(new ResistanceTransition.Sabotages(traitors - (betrayed ? 1 : 0)));
+        betrayed = false;
+        startPondering();
     }
 
 }
@@ -0,0 +1,77 @@
+package search;
+
+/**
+ * Decides how the search trades off exploration and exploitation when picking which child of a node to descend to.
+ * Each child is given a value from its statistics, and the child with the highest value is picked.
+ */
+public interface SelectionPolicy {
+
+    /**
+     * Plain UCB1, which ignores the priors.
+     * See https://en.wikipedia.org/wiki/Monte_Carlo_tree_search#Exploration_and_exploitation
+     */
+    SelectionPolicy UCB1 = new UCB1();
+
+    /**
+     * Gives the value of a child.
+     *
+     * @param wins the number of games won through the child by the team choosing between the children
+     * @param games the number of games through the child, at least one
+     * @param total the number of games through the child's parent
+     * @param prior the probability of the child's move according to the opponent model, or zero if priors are not used
+     * @return the child's value - the child with the highest value is picked
+     */
+    double value(int wins, int games, int total, double prior);
+
+    /**
+     * @return whether the policy uses priors, which must then be worked out whenever a node is expanded
+     */
+    boolean priors();
+
+    /**
+     * UCB1: the average result plus {@code sqrt(2 ln(total) / games)}.
+     */
+    final class UCB1 implements SelectionPolicy {
+
+        @Override
+        public double value(int wins, int games, int total, double prior) {
+            return (double) wins / games + Math.sqrt(2 * Math.log(total + 1) / games);
+        }
+
+        @Override
+        public boolean priors() {
+            return false;
+        }
+
+    }
+
+    /**
+     * PUCT, as used by AlphaZero: the average result plus {@code exploration * prior * sqrt(total) / (1 + games)}.
+     * Exploration is shared out in proportion to the priors, so the moves the opponent model thinks likely are searched
+     * first and unlikely ones are rarely revisited unless they have done well.
+     */
+    final class PUCT implements SelectionPolicy {
+
+        //how strongly the search explores, relative to the average result
+        private final double exploration;
+
+        /**
+         * @param exploration how strongly the search explores, relative to the average result
+         */
+        public PUCT(double exploration) {
+            this.exploration = exploration;
+        }
+
+        @Override
+        public double value(int wins, int games, int total, double prior) {
+            return (double) wins / games + exploration * prior * Math.sqrt(total) / (1 + games);
+        }
+
+        @Override
+        public boolean priors() {
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package search;
+
+import java.util.Random;
+
+/**
+ * A fast, splittable random number generator (SplitMix64). Unlike {@link Random} it keeps no shared atomic seed, so it
+ * is cheap to call from a hot loop - but an instance must only be used by one thread at a time. Threads that need
+ * their own generator should each take one from {@link #split()}, which derives a new, independent generator from
+ * this one: a tree of generators split from a single seed always produces the same numbers.
+ */
+public final class SplitMix extends Random {
+
+    //the version of the serialized form (Random is serializable)
+    private static final long serialVersionUID = 1L;
+
+    //the odd constant added to the state at each step
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    //the generator's state
+    private long state;
+
+    /**
+     * Creates a new generator with a seed that differs on every call.
+     */
+    public SplitMix() {
+        this(System.nanoTime() ^ mix(System.identityHashCode(new Object())));
+    }
+
+    /**
+     * Creates a new generator from the given seed. Generators created with the same seed produce the same numbers.
+     *
+     * @param seed the initial seed
+     */
+    public SplitMix(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Creates a new generator, independent of this one, and advances this generator.
+     *
+     * @return the new generator
+     */
+    public SplitMix split() {
+        return new SplitMix(mix(nextLong()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSeed(long seed) {
+        //called by the superclass constructor, before this object's fields are initialised
+        this.state = seed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextLong() {
+        return mix(state += GAMMA);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Gives a well-mixed 64-bit hash of a value, suitable for building Zobrist keys: different values give unrelated
+     * hashes.
+     *
+     * @param value the value to hash
+     * @return the hash
+     */
+    static long hash(long value) {
+        return mix(value + GAMMA);
+    }
+
+    /**
+     * The SplitMix64 finaliser: scrambles the bits of a value.
+     *
+     * @param z the value to scramble
+     * @return the scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+}
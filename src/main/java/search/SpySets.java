@@ -0,0 +1,189 @@
+package search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bayesian updates of resistance members' suspicions, shared by {@link Perspective} and {@link CompactGameState}.
+ * Every possible set of spies is enumerated once per game size and kept as a table of bitmasks, and the probability
+ * of each number of sabotages is precomputed, so an update is a single pass over the table which credits each spy set's
+ * posterior weight to all of its members at once.
+ */
+public final class SpySets {
+
+    /**
+     * The most players that can be on a mission.
+     */
+    private static final int MAX_MISSION = 5;
+
+    /**
+     * LIKELIHOOD[onMission][traitors] is the probability of the given number of sabotages from the given number of
+     * spies on a mission. Each spy on the mission sabotages independently with probability 0.95 / onMission (the
+     * opponent model), so the number of sabotages is binomial.
+     */
+    private static final double[][] LIKELIHOOD = new double[MAX_MISSION + 1][MAX_MISSION + 1];
+
+    static {
+        LIKELIHOOD[0][0] = 1.0;
+        for (int onMission = 1; onMission <= MAX_MISSION; ++onMission) {
+            double betray = 0.95 / onMission;
+            for (int traitors = 0; traitors <= onMission; ++traitors) {
+                LIKELIHOOD[onMission][traitors] = Teams.binomial(onMission, traitors) *
+                        Math.pow(betray, traitors) * Math.pow(1 - betray, onMission - traitors);
+            }
+        }
+    }
+
+    /**
+     * TABLES[players * 11 + spies] holds the bitmask of every set of spies in a game of that size, built the first
+     * time it is needed.
+     */
+    private static final AtomicReferenceArray<int[]> TABLES = new AtomicReferenceArray<int[]>(11 * 11);
+
+    /**
+     * Each thread's scratch space for {@link #update(double[], int, int, int, int, int, int)}, which runs at every
+     * mission of every playout - so the search threads reuse their own rather than allocating at each update.
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private SpySets() {}
+
+    /**
+     * Gives every possible set of spies. The returned array is shared and must not be modified.
+     *
+     * @param players the number of players in the game
+     * @param spies the number of spies in the game
+     * @return the bitmask of every combination of players of the given size
+     */
+    public static int[] of(int players, int spies) {
+        int index = players * 11 + spies;
+        int[] sets = TABLES.get(index);
+        if (sets == null) {
+            sets = new int[Teams.binomial(players, spies)];
+            int count = 0;
+            for (int set = (1 << spies) - 1; set < 1 << players; set = Teams.nextCombination(set)) {
+                sets[count++] = set;
+            }
+            //another thread may be building the same table - either copy is fine, so keep whichever wins
+            TABLES.compareAndSet(index, null, sets);
+            sets = TABLES.get(index);
+        }
+        return sets;
+    }
+
+    /**
+     * Updates one resistance member's suspicions of every player, given the number of sabotages on a mission. For
+     * each spy set S the posterior weight P(S) * P(sabotages | S) is computed, where P(S) treats the players'
+     * suspicions as independent; each player's new suspicion is the total weight of the sets containing them, scaled
+     * so that the suspicions sum to the number of spies.
+     *
+     * @param suspicion the suspicions, updated in place
+     * @param offset the index in the array of the first player's suspicion
+     * @param players the number of players in the game
+     * @param spies the number of spies in the game
+     * @param mission the bitmask of players on the mission
+     * @param traitors the number of sabotages
+     */
+    public static void update(double[] suspicion, int offset, int players, int spies, int mission, int traitors) {
+        update(suspicion, offset, 1, players, spies, mission, traitors);
+    }
+
+    /**
+     * Updates several resistance members' suspicions at once, as for
+     * {@link #update(double[], int, int, int, int, int)}. The spy sets and their likelihoods are the same for every
+     * member - only the suspicions differ - so each spy set is looked at once, and its posterior weight is worked out
+     * for every member together in a simple loop over the members.
+     *
+     * @param suspicion the suspicions, updated in place, with each member's suspicions of every player in turn
+     * @param offset the index in the array of the first member's suspicion of the first player
+     * @param rows the number of members
+     * @param players the number of players in the game
+     * @param spies the number of spies in the game
+     * @param mission the bitmask of players on the mission
+     * @param traitors the number of sabotages
+     */
+    public static void update(double[] suspicion, int offset, int rows, int players, int spies, int mission,
+                              int traitors) {
+        Scratch scratch = SCRATCH.get();
+        double[] updated = scratch.updated(rows * players);
+        double[] weight = scratch.weight(rows);
+        for (int set : of(players, spies)) {
+            double likelihood = LIKELIHOOD[Integer.bitCount(set & mission)][traitors];
+            if (likelihood == 0) {
+                continue;
+            }
+            //P(S) * P(sabotages | S) under each member's suspicions, one player at a time
+            Arrays.fill(weight, likelihood);
+            for (int i = 0; i < players; ++i) {
+                int index = offset + i;
+                if ((set & (1 << i)) != 0) {
+                    for (int r = 0; r < rows; ++r, index += players) {
+                        weight[r] *= suspicion[index];
+                    }
+                } else {
+                    for (int r = 0; r < rows; ++r, index += players) {
+                        weight[r] *= 1 - suspicion[index];
+                    }
+                }
+            }
+            for (int rest = set; rest != 0; rest &= rest - 1) {
+                for (int r = 0, index = Integer.numberOfTrailingZeros(rest); r < rows; ++r, index += players) {
+                    updated[index] += weight[r];
+                }
+            }
+        }
+        for (int r = 0; r < rows; ++r) {
+            double total = 0;
+            for (int i = 0; i < players; ++i) {
+                total += updated[r * players + i];
+            }
+            for (int i = 0; i < players; ++i) {
+                double newValue = updated[r * players + i] * spies / total;
+                suspicion[offset + r * players + i] = Math.max(0, Math.min(newValue, 1));
+            }
+        }
+    }
+
+    /**
+     * A thread's scratch arrays, sized for the largest game and only grown if a bigger update comes along.
+     */
+    private static final class Scratch {
+
+        //the posterior weight credited to each member's suspicion of each player
+        private double[] updated = new double[10 * 10];
+
+        //the posterior weight of the current spy set under each member's suspicions
+        private double[] weight = new double[10];
+
+        /**
+         * @param length the number of values needed
+         * @return the array of updated suspicions, with the values needed cleared
+         */
+        double[] updated(int length) {
+            if (updated.length < length) {
+                updated = new double[length];
+            } else {
+                Arrays.fill(updated, 0, length, 0);
+            }
+            return updated;
+        }
+
+        /**
+         * @param length the number of values needed
+         * @return the array of spy set weights, which is filled before it is read
+         */
+        double[] weight(int length) {
+            if (weight.length < length) {
+                weight = new double[length];
+            }
+            return weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+package search;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Precomputed tables of the teams a leader may nominate. A team is a bitmask over player indices, and the teams for
+ * a given number of players, round and leader never change, so they are generated once and shared by every state and
+ * every search thread.
+ */
+public final class Teams {
+
+    /**
+     * TABLES[nplayers-5][round-1][leader] holds every team for that round containing the leader, in increasing order.
+     * Each table is built the first time a game with that many players asks for it.
+     */
+    private static final AtomicReferenceArray<int[][][]> TABLES = new AtomicReferenceArray<int[][][]>(6);
+
+    private Teams() {}
+
+    /**
+     * @param players the number of players in the game, from 5-10
+     * @param round the round, from 1-5
+     * @return the number of players on a mission in the given round
+     */
+    public static int size(int players, int round) {
+        return GameState.MISSION_NUMBERS[players - 5][round - 1];
+    }
+
+    /**
+     * Gives every team a leader may nominate. The returned array is shared and must not be modified.
+     *
+     * @param players the number of players in the game, from 5-10
+     * @param round the round, from 1-5
+     * @param leader the index of the leader
+     * @return the bitmask of every team of the right size which contains the leader
+     */
+    public static int[] of(int players, int round, int leader) {
+        int[][][] table = TABLES.get(players - 5);
+        if (table == null) {
+            //another thread may be building the same table - either copy is fine, so keep whichever wins
+            TABLES.compareAndSet(players - 5, null, build(players));
+            table = TABLES.get(players - 5);
+        }
+        return table[round - 1][leader];
+    }
+
+    /**
+     * Builds the tables for a number of players.
+     *
+     * @param players the number of players in the game
+     * @return the teams for each round and leader
+     */
+    private static int[][][] build(int players) {
+        int[][][] table = new int[5][players][];
+        for (int round = 1; round <= 5; ++round) {
+            int size = size(players, round);
+            for (int leader = 0; leader < players; ++leader) {
+                int[] teams = new int[binomial(players - 1, size - 1)];
+                int count = 0;
+                for (int team = (1 << size) - 1; team < 1 << players; team = nextCombination(team)) {
+                    if ((team & (1 << leader)) != 0) {
+                        teams[count++] = team;
+                    }
+                }
+                table[round - 1][leader] = teams;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Gosper's hack: gives the next larger integer with the same number of bits set, which iterates over every
+     * combination of a given size in increasing order.
+     *
+     * @param x a bitmask
+     * @return the next bitmask with the same number of bits set
+     */
+    static int nextCombination(int x) {
+        int c = x & -x;
+        int r = x + c;
+        return (((r ^ x) >>> 2) / c) | r;
+    }
+
+    /**
+     * @param n the number of items
+     * @param k the number chosen
+     * @return n choose k
+     */
+    static int binomial(int n, int k) {
+        int result = 1;
+        for (int i = 1; i <= k; ++i) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,242 @@
+package search;
+
+import java.util.List;
+
+/**
+ * Measurements of a search, taken when telemetry is turned on with {@link MCTS#telemetry(boolean)} and read with
+ * {@link MCTS#telemetry()}: how many playouts were made and how quickly, how large and deep the tree grew, and how the
+ * workers' time was split between the steps of each playout. Each worker records into its own {@link Counters}, so
+ * measuring adds no contention between them; the counters are only merged when the measurements are read.
+ */
+public final class Telemetry {
+
+    /**
+     * The number of depths in the histogram; deeper leaves are counted in the last entry.
+     */
+    public static final int DEPTHS = 64;
+
+    //the number of playouts made
+    private final long playouts;
+
+    //the time spent searching, in nanoseconds
+    private final long elapsed;
+
+    //the number of nodes in the trees
+    private final int nodes;
+
+    //depths[d] is the number of playouts which started from a leaf at depth d
+    private final long[] depths;
+
+    //the total time the workers spent in each step of a playout, in nanoseconds
+    private final long copy;
+    private final long expand;
+    private final long simulate;
+    private final long backPropagate;
+
+    //the parts of the simulation time spent weighting moves by the opponent model, and applying them
+    private final long weights;
+    private final long update;
+
+    /**
+     * Merges the workers' counters.
+     *
+     * @param counters the counters of every worker
+     * @param elapsed the time spent searching, in nanoseconds
+     * @param nodes the number of nodes in the trees
+     */
+    Telemetry(List<Counters> counters, long elapsed, int nodes) {
+        long playouts = 0, copy = 0, expand = 0, simulate = 0, backPropagate = 0, weights = 0, update = 0;
+        long[] depths = new long[DEPTHS];
+        for (Counters c : counters) {
+            playouts += c.playouts;
+            copy += c.copy;
+            expand += c.expand;
+            simulate += c.simulate;
+            backPropagate += c.backPropagate;
+            weights += c.weights;
+            update += c.update;
+            for (int d = 0; d < DEPTHS; ++d) {
+                depths[d] += c.depths[d];
+            }
+        }
+        this.playouts = playouts;
+        this.elapsed = elapsed;
+        this.nodes = nodes;
+        this.depths = depths;
+        this.copy = copy;
+        this.expand = expand;
+        this.simulate = simulate;
+        this.backPropagate = backPropagate;
+        this.weights = weights;
+        this.update = update;
+    }
+
+    /**
+     * @return the number of playouts made
+     */
+    public long playouts() {
+        return playouts;
+    }
+
+    /**
+     * @return the time spent searching, in milliseconds
+     */
+    public double elapsed() {
+        return elapsed / 1e6;
+    }
+
+    /**
+     * @return the number of playouts made per second of searching
+     */
+    public double playoutsPerSecond() {
+        return elapsed > 0 ? playouts * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * @return the number of nodes in the trees when the measurements were read
+     */
+    public int nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the histogram of the depth of the leaf each playout started from: entry d is the number of playouts from
+     *         depth d, and the last entry counts every deeper playout as well
+     */
+    public long[] depths() {
+        return depths.clone();
+    }
+
+    /**
+     * @return the greatest depth any playout started from
+     */
+    public int maxDepth() {
+        for (int d = DEPTHS - 1; d > 0; --d) {
+            if (depths[d] != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the mean depth the playouts started from
+     */
+    public double meanDepth() {
+        long total = 0;
+        for (int d = 0; d < DEPTHS; ++d) {
+            total += d * depths[d];
+        }
+        return playouts > 0 ? (double) total / playouts : 0;
+    }
+
+    /**
+     * @return the time spent copying (or determinizing) the root state, in milliseconds over all workers
+     */
+    public double copyTime() {
+        return copy / 1e6;
+    }
+
+    /**
+     * @return the time spent selecting and expanding nodes, in milliseconds over all workers
+     */
+    public double expandTime() {
+        return expand / 1e6;
+    }
+
+    /**
+     * @return the time spent playing games out from the leaves, including the opponent model and the updates to each
+     *         perspective (split by {@link #weightsTime()} and {@link #updateTime()}), in milliseconds over all workers
+     */
+    public double simulateTime() {
+        return simulate / 1e6;
+    }
+
+    /**
+     * @return the part of {@link #simulateTime()} spent weighting the moves by the opponent model and picking one, in
+     *         milliseconds over all workers
+     */
+    public double weightsTime() {
+        return weights / 1e6;
+    }
+
+    /**
+     * @return the part of {@link #simulateTime()} spent applying the moves picked, which includes updating each
+     *         resistance member's perspective after a mission, in milliseconds over all workers
+     */
+    public double updateTime() {
+        return update / 1e6;
+    }
+
+    /**
+     * @return the time spent back-propagating results, in milliseconds over all workers
+     */
+    public double backPropagateTime() {
+        return backPropagate / 1e6;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "Telemetry{playouts=%d, elapsed=%.1fms, rate=%.0f/s, nodes=%d, depth=%.2f (max %d), " +
+                        "copy=%.1fms, expand=%.1fms, simulate=%.1fms (weights=%.1fms, update=%.1fms), " +
+                        "backPropagate=%.1fms}",
+                playouts, elapsed(), playoutsPerSecond(), nodes, meanDepth(), maxDepth(),
+                copyTime(), expandTime(), simulateTime(), weightsTime(), updateTime(), backPropagateTime()
+        );
+    }
+
+    /**
+     * One worker's measurements, only ever written by that worker.
+     */
+    static final class Counters {
+
+        //the number of playouts made
+        private long playouts;
+
+        //depths[d] is the number of playouts which started from a leaf at depth d
+        private final long[] depths = new long[DEPTHS];
+
+        //the time spent in each step of a playout, in nanoseconds
+        private long copy;
+        private long expand;
+        private long simulate;
+        private long backPropagate;
+        private long weights;
+        private long update;
+
+        /**
+         * Records a playout.
+         *
+         * @param depth the depth of the leaf it started from
+         * @param copy the time spent copying the root state, in nanoseconds
+         * @param expand the time spent selecting and expanding nodes, in nanoseconds
+         * @param simulate the time spent playing the game out, in nanoseconds
+         * @param backPropagate the time spent back-propagating the result, in nanoseconds
+         */
+        void record(int depth, long copy, long expand, long simulate, long backPropagate) {
+            ++playouts;
+            ++depths[Math.min(depth, DEPTHS - 1)];
+            this.copy += copy;
+            this.expand += expand;
+            this.simulate += simulate;
+            this.backPropagate += backPropagate;
+        }
+
+        /**
+         * Records how a playout's simulation time was split, before the playout itself is recorded.
+         *
+         * @param weights the time spent weighting moves by the opponent model, in nanoseconds
+         * @param update the time spent applying the moves, in nanoseconds
+         */
+        void simulated(long weights, long update) {
+            this.weights += weights;
+            this.update += update;
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+package search;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size table of search statistics keyed by state (see {@link MCTS.State#key()}), so that every node reaching
+ * the same state by a different order of moves shares one set of statistics. Each key maps to a single slot; a state
+ * landing on a slot held by another state replaces it, starting its statistics afresh.
+ * <p>
+ * The table is shared between worker threads without locking. Keys and statistics are updated separately, so a slot
+ * being replaced may briefly mix the statistics of two states - an acceptable error for a search which is itself
+ * statistical.
+ */
+final class Transpositions {
+
+    //the key of the state held in each slot, or zero if the slot is empty
+    private final AtomicLongArray keys;
+
+    //the number of games carried out through each slot's state, including those still in progress
+    private final AtomicIntegerArray visits;
+
+    //wins[slot * teams + team] is the number of games won by the team through the slot's state
+    private final AtomicIntegerArray wins;
+
+    //the number of teams in the game
+    private final int teams;
+
+    //the number of slots less one, to map keys to slots
+    private final int mask;
+
+    /**
+     * Creates a new, empty table.
+     *
+     * @param entries the number of states the table can hold, rounded up to a power of two
+     * @param teams the number of teams in the game
+     */
+    Transpositions(int entries, int teams) {
+        int size = Integer.highestOneBit(Math.max(1, entries - 1)) << 1;
+        this.keys = new AtomicLongArray(size);
+        this.visits = new AtomicIntegerArray(size);
+        this.wins = new AtomicIntegerArray(size * teams);
+        this.teams = teams;
+        this.mask = size - 1;
+    }
+
+    /**
+     * Counts a game through a state, as for {@link Tree#visit(int)}, taking over the state's slot if it is held by
+     * another state.
+     *
+     * @param key the state's key
+     */
+    void visit(long key) {
+        visit(key, 1);
+    }
+
+    /**
+     * Counts several games through a state, taking over the state's slot if it is held by another state.
+     *
+     * @param key the state's key
+     * @param games the number of games
+     */
+    void visit(long key, int games) {
+        int slot = slot(key);
+        long resident = keys.get(slot);
+        if (resident != key && keys.compareAndSet(slot, resident, key)) {
+            visits.set(slot, 0);
+            for (int t = 0; t < teams; ++t) {
+                wins.set(slot * teams + t, 0);
+            }
+        }
+        visits.addAndGet(slot, games);
+    }
+
+    /**
+     * Records a win through a state, unless its slot has since been taken by another state.
+     *
+     * @param key the state's key
+     * @param winner the team which won
+     */
+    void win(long key, int winner) {
+        win(key, winner, 1);
+    }
+
+    /**
+     * Records several wins through a state, unless its slot has since been taken by another state.
+     *
+     * @param key the state's key
+     * @param winner the team which won
+     * @param games the number of games won
+     */
+    void win(long key, int winner, int games) {
+        int slot = slot(key);
+        if (keys.get(slot) == key) {
+            wins.addAndGet(slot * teams + winner, games);
+        }
+    }
+
+    /**
+     * @param key the state's key
+     * @return the number of games through the state, or zero if it isn't in the table
+     */
+    int visits(long key) {
+        int slot = slot(key);
+        return keys.get(slot) == key ? visits.get(slot) : 0;
+    }
+
+    /**
+     * @param key the state's key
+     * @param team a team
+     * @return the number of games won by the team through the state, or zero if it isn't in the table
+     */
+    int wins(long key, int team) {
+        int slot = slot(key);
+        return keys.get(slot) == key ? wins.get(slot * teams + team) : 0;
+    }
+
+    /**
+     * @param key a state's key
+     * @return the slot the state is held in
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+}
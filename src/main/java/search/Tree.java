@@ -0,0 +1,610 @@
+package search;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A search tree held in a fixed-size pool of nodes. Rather than one object per node, each field is an array indexed
+ * by node, so the memory used by a tree is fixed when it is created and nodes are recycled instead of being left to
+ * the garbage collector. Once the pool is full, nodes simply stop being expanded.
+ * <p>
+ * A node's children are reserved together as one contiguous block when it is expanded, but nothing is written to them
+ * until they are claimed: workers claim the children one at a time from the start of the block, so the claimed
+ * children are always a prefix of it, and each child's move is only worked out when it is claimed. Expanding a node is
+ * therefore constant time, however many moves there are.
+ * <p>
+ * Trees are safe to share between worker threads: the statistics are updated atomically, a node's fields are written
+ * before its first visit is counted (so a child with no visits is ignored, as it may still be being written), and a
+ * node's own fields are written before its children are published through {@link #first}. Every node not in use has
+ * no visits.
+ * <p>
+ * If a {@link Transpositions} table is given, the statistics of each expanded node are also kept in the table under
+ * the node's state, and selection uses the table's statistics - which include games through every other node reaching
+ * the same state - in place of the node's own.
+ */
+final class Tree {
+
+    /**
+     * Stands for 'no node', for example the parent of the root.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The value of {@link #first} while a worker is allocating a node's children.
+     */
+    private static final int EXPANDING = -2;
+
+    /**
+     * The root, which is always the first node in the pool.
+     */
+    static final int ROOT = 0;
+
+    //the most nodes the tree can hold
+    private final int capacity;
+
+    //the number of teams in the game, i.e. the number of win counts per node
+    private final int teams;
+
+    //the number of nodes in use
+    private final AtomicInteger size;
+
+    //the number of games carried out in each node's subtree, including those still in progress (virtual losses)
+    private final AtomicIntegerArray visits;
+
+    //wins[node * teams + team] is the number of games won by the team in the node's subtree
+    private final AtomicIntegerArray wins;
+
+    //the first of each node's children, NONE if it hasn't been expanded or EXPANDING while it is being expanded
+    private final AtomicIntegerArray first;
+
+    //the number of each node's children which have been claimed
+    private final AtomicIntegerArray claimed;
+
+    //each node's parent
+    private final int[] parent;
+
+    //the move performed on the parent's state to reach each node
+    private final int[] move;
+
+    //the team of the current player at each node (c.f. minimax), known once the node is expanded
+    private final int[] team;
+
+    //the number of each node's children
+    private final int[] count;
+
+    //the index of the move for each node's first child: the children take the moves in a random rotation...
+    private final int[] offset;
+
+    //...and stride, which is coprime with the number of children so that each move is taken exactly once
+    private final int[] stride;
+
+    //the indices of each node's moves in the order its children are claimed, if they are ordered by their weights
+    // rather than by offset and stride
+    private final int[][] order;
+
+    //the probability of the move leading to each node according to the opponent model, if the policy uses priors -
+    // written for a whole block of children when their parent is expanded
+    private final double[] prior;
+
+    //with progressive widening, a node with n visits may have coefficient * n^exponent children claimed
+    private double coefficient;
+    private double exponent;
+
+    //how children are picked
+    private SelectionPolicy policy;
+
+    //the key of the state at each node, known once the node is expanded - only used with a transposition table
+    private final long[] key;
+
+    //the table of statistics shared between nodes reaching the same state, or null not to share them
+    private Transpositions table;
+
+    //scratch space for compacting the tree, mapping old node indices to new ones
+    private final int[] remap;
+
+    /**
+     * Creates a new, empty tree.
+     *
+     * @param capacity the most nodes the tree can hold
+     * @param teams the number of teams in the game
+     */
+    Tree(int capacity, int teams) {
+        this.capacity = capacity;
+        this.teams = teams;
+        this.size = new AtomicInteger();
+        this.visits = new AtomicIntegerArray(capacity);
+        this.wins = new AtomicIntegerArray(capacity * teams);
+        this.first = new AtomicIntegerArray(capacity);
+        this.claimed = new AtomicIntegerArray(capacity);
+        this.parent = new int[capacity];
+        this.move = new int[capacity];
+        this.team = new int[capacity];
+        this.count = new int[capacity];
+        this.offset = new int[capacity];
+        this.stride = new int[capacity];
+        this.order = new int[capacity][];
+        this.prior = new double[capacity];
+        this.policy = SelectionPolicy.UCB1;
+        this.key = new long[capacity];
+        this.remap = new int[capacity];
+    }
+
+    /**
+     * @return whether the tree has no nodes, not even a root
+     */
+    boolean empty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * @return the number of nodes in use
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Sets the table in which statistics are shared between nodes reaching the same state. Should not be called while
+     * the tree is being searched.
+     *
+     * @param table the table, or {@code null} not to share statistics
+     */
+    void transpositions(Transpositions table) {
+        this.table = table;
+    }
+
+    /**
+     * Sets up progressive widening: rather than claiming every child of a node before choosing between them, a node
+     * visited n times only has {@code ceil(coefficient * n^exponent)} of its children claimed, and they are claimed in
+     * order of their weights (see {@link MCTS.State#weightedMoves(Sampler)}), most likely first. Should not be called
+     * while the tree is being searched.
+     *
+     * @param coefficient the coefficient, or zero to claim every child
+     * @param exponent the exponent, between zero and one
+     */
+    void widening(double coefficient, double exponent) {
+        this.coefficient = coefficient;
+        this.exponent = exponent;
+    }
+
+    /**
+     * Sets how children are picked. Should not be called while the tree is being searched.
+     *
+     * @param policy the selection policy
+     */
+    void policy(SelectionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Removes every node, recycling them all.
+     */
+    void clear() {
+        clear(0, size.get());
+        size.set(0);
+    }
+
+    /**
+     * Removes every node and creates a new root.
+     *
+     * @param state the state at the root
+     */
+    void reset(MCTS.State state) {
+        size.set(1);
+        init(ROOT, NONE, 0);
+        team[ROOT] = state.team(state.currentPlayer());
+        prior[ROOT] = 1;
+    }
+
+    /**
+     * Moves the root down to the claimed child reached by the given move, keeping that child's subtree and recycling
+     * every other node. The kept nodes are compacted to the start of the pool, in their existing order - since a
+     * child is always allocated after its parent, no node moves to a later index and blocks of children stay
+     * contiguous, so the nodes can be moved in place.
+     *
+     * @param move the move taken from the root
+     * @return whether the root had a claimed child reached by the move; if not, the tree is left empty
+     */
+    boolean advance(int move) {
+        int root = NONE;
+        for (int child = first(ROOT), end = child + claimed(ROOT); child < end; ++child) {
+            if (visits.get(child) > 0 && this.move[child] == move) {
+                root = child;
+                break;
+            }
+        }
+        if (root == NONE) {
+            clear();
+            return false;
+        }
+        int size = this.size.get();
+        //find the new index of each node in the new root's subtree - a node is kept if it is in the block of children
+        // of a kept node which has been visited
+        for (int node = root; node < size; ++node) {
+            remap[node] = NONE;
+        }
+        remap[root] = 0;
+        int kept = 0;
+        for (int node = root; node < size; ++node) {
+            if (remap[node] == NONE) {
+                continue;
+            }
+            remap[node] = kept++;
+            int children = first.get(node);
+            if (visits.get(node) > 0 && children >= 0) {
+                for (int child = children; child < children + count[node]; ++child) {
+                    remap[child] = 0;
+                }
+            }
+        }
+        //move each kept node down to its new index
+        for (int node = root; node < size; ++node) {
+            int index = remap[node];
+            if (index == NONE) {
+                continue;
+            }
+            int games = visits.get(node);
+            visits.set(index, games);
+            //written for the whole block when the parent was expanded, so even unclaimed children have one
+            prior[index] = prior[node];
+            if (games == 0) {
+                //a child which was never claimed - it holds nothing else
+                continue;
+            }
+            int children = first.get(node);
+            parent[index] = node == root ? NONE : remap[parent[node]];
+            this.move[index] = this.move[node];
+            team[index] = team[node];
+            key[index] = key[node];
+            count[index] = count[node];
+            offset[index] = offset[node];
+            stride[index] = stride[node];
+            order[index] = order[node];
+            claimed.set(index, claimed.get(node));
+            for (int t = 0; t < teams; ++t) {
+                wins.set(index * teams + t, wins.get(node * teams + t));
+            }
+            first.set(index, children < 0 ? NONE : remap[children]);
+        }
+        clear(kept, size);
+        this.size.set(kept);
+        return true;
+    }
+
+    /**
+     * Prepares a node for its children to be claimed, unless it already has been. The node's block of children is
+     * reserved, but the children are not created until they are claimed, so no moves need to be tried. The moves'
+     * weights are only looked at if the selection policy uses priors or the tree widens progressively.
+     *
+     * @param node the node to expand
+     * @param state the state at the node
+     * @param random the worker's random number generator, used to pick the order the children are claimed in
+     * @param sampler the worker's sampler, used to find the weights of the moves
+     * @return whether the node has children; {@code false} if the pool is full or another worker is expanding it
+     */
+    boolean expand(int node, MCTS.State state, Random random, Sampler sampler) {
+        if (first.get(node) >= 0) {
+            return true;
+        }
+        if (!first.compareAndSet(node, NONE, EXPANDING)) {
+            return false;
+        }
+        int moves = state.moves();
+        int start = allocate(moves);
+        if (start == NONE) {
+            first.set(node, NONE);
+            return false;
+        }
+        team[node] = state.team(state.currentPlayer());
+        if (table != null) {
+            key[node] = state.key();
+        }
+        count[node] = moves;
+        order[node] = null;
+        boolean weighted = policy.priors() || (coefficient > 0 && moves > 1 && !state.chance());
+        if (weighted) {
+            state.weightedMoves(sampler);
+        }
+        if (state.chance()) {
+            //the children of a chance node are reached by outcome rather than claimed, so they are in move order
+            // and all count as claimed
+            offset[node] = 0;
+            stride[node] = 1;
+            claimed.set(node, moves);
+        } else {
+            offset[node] = random.nextInt(moves);
+            int step = 1 + random.nextInt(moves);
+            while (gcd(step, moves) != 1) {
+                ++step;
+            }
+            stride[node] = step;
+            if (coefficient > 0 && moves > 1) {
+                order[node] = order(sampler, random);
+            }
+        }
+        if (policy.priors()) {
+            double total = 0;
+            for (int i = 0; i < moves; ++i) {
+                total += sampler.weight(i);
+            }
+            for (int c = 0; c < moves; ++c) {
+                double weight = total > 0 ? sampler.weight(index(node, c)) / total : 1.0 / moves;
+                prior[start + c] = weight;
+            }
+        }
+        if (table != null) {
+            //share the games which reached the node before it had a key - the one which claimed it and the one in
+            // progress - so that the table counts every game the node does
+            table.visit(key[node], visits.get(node));
+            for (int t = 0; t < teams; ++t) {
+                table.win(key[node], t, wins.get(node * teams + t));
+            }
+        }
+        //publish the children - the writes above are visible to any worker which reads this
+        first.set(node, start);
+        return true;
+    }
+
+    /**
+     * Claims the next unvisited child of an expanded node and counts a visit to it. Each child is handed out exactly
+     * once, even with several workers searching the node.
+     *
+     * @param node the node to claim a child of
+     * @param state the state at the node
+     * @return the claimed child, or {@link #NONE} if every child has been claimed
+     */
+    int claim(int node, MCTS.State state) {
+        int n = count[node];
+        int limit = n;
+        if (coefficient > 0) {
+            limit = Math.min(n, (int) Math.ceil(coefficient * Math.pow(visits.get(node), exponent)));
+        }
+        while (true) {
+            int c = claimed.get(node);
+            if (c >= limit) {
+                return NONE;
+            }
+            if (claimed.compareAndSet(node, c, c + 1)) {
+                int child = first.get(node) + c;
+                init(child, node, state.move(index(node, c)));
+                //publish the child
+                visits.set(child, 1);
+                return child;
+            }
+        }
+    }
+
+    /**
+     * Gives the child of an expanded chance node reached by the given outcome, creating it if this is the first time
+     * the outcome has been drawn, and counts a visit to it.
+     *
+     * @param node the chance node
+     * @param index the index of the outcome's move
+     * @param state the state at the node
+     * @return the child
+     */
+    int outcome(int node, int index, MCTS.State state) {
+        int child = first.get(node) + index;
+        if (visits.get(child) == 0) {
+            synchronized (this) {
+                //another worker may have created it since
+                if (visits.get(child) == 0) {
+                    init(child, node, state.move(index));
+                    //publish the child
+                    visits.set(child, 1);
+                    return child;
+                }
+            }
+        }
+        visit(child);
+        return child;
+    }
+
+    /**
+     * @param node an expanded node
+     * @return the first of the node's children; the claimed children follow it
+     */
+    int first(int node) {
+        return first.get(node);
+    }
+
+    /**
+     * @param node a node
+     * @return the number of the node's children which have been claimed
+     */
+    int claimed(int node) {
+        return Math.min(claimed.get(node), count[node]);
+    }
+
+    /**
+     * @param node a node
+     * @return the move performed on the parent's state to reach the node
+     */
+    int move(int node) {
+        return move[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the number of moves from the root to the node
+     */
+    int depth(int node) {
+        int depth = 0;
+        for (node = parent[node]; node != NONE; node = parent[node]) {
+            ++depth;
+        }
+        return depth;
+    }
+
+    /**
+     * @param node a node in an expanded node's block of children
+     * @return the probability of the move leading to the node according to the opponent model, if the selection
+     *         policy uses priors
+     */
+    double prior(int node) {
+        return prior[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the number of games carried out through the node
+     */
+    int visits(int node) {
+        return visits.get(node);
+    }
+
+    /**
+     * Gives the value of a node under the selection policy, from the point of view of the team choosing it.
+     *
+     * @param node a node other than the root
+     * @return the node's value, or {@code NaN} if the node has just been claimed and is still being written
+     */
+    double value(int node) {
+        int games = visits.get(node);
+        if (games == 0) {
+            return Double.NaN;
+        }
+        int parent = this.parent[node];
+        int won = wins.get(node * teams + team[parent]);
+        if (table != null && first.get(node) >= 0) {
+            //use the shared statistics, unless the state has been replaced in the table since
+            int shared = table.visits(key[node]);
+            if (shared >= games) {
+                games = shared;
+                won = table.wins(key[node], team[parent]);
+            }
+        }
+        return policy.value(won, games, visits.get(parent), prior[node]);
+    }
+
+    /**
+     * Counts a game through a node as soon as a worker descends through it, before its result is known. Until the
+     * result is back-propagated the game looks like a loss for every team (a virtual loss), which steers other
+     * workers sharing the tree towards different children.
+     *
+     * @param node the node
+     */
+    void visit(int node) {
+        visits.incrementAndGet(node);
+        if (table != null && first.get(node) >= 0) {
+            table.visit(key[node]);
+        }
+    }
+
+    /**
+     * Back-propagates a result from a node all the way up the tree. The game itself has already been counted by
+     * {@link #visit(int)}, so only the win is added.
+     *
+     * @param node the node the game was played out from
+     * @param winner the team which won the game
+     */
+    void backPropagate(int node, int winner) {
+        for (; node != NONE; node = parent[node]) {
+            wins.incrementAndGet(node * teams + winner);
+            if (table != null && first.get(node) >= 0) {
+                table.win(key[node], winner);
+            }
+        }
+    }
+
+    /**
+     * @param node an expanded node
+     * @param c the position of one of the node's children in its block
+     * @return the index of the move leading to the child
+     */
+    private int index(int node, int c) {
+        int[] order = this.order[node];
+        return order != null ? order[c] : (int) ((offset[node] + (long) c * stride[node]) % count[node]);
+    }
+
+    /**
+     * Reserves a block of nodes.
+     *
+     * @param n the number of nodes
+     * @return the first node of the block, or {@link #NONE} if there isn't enough room left
+     */
+    private int allocate(int n) {
+        while (true) {
+            int start = size.get();
+            if (start + n > capacity) {
+                return NONE;
+            }
+            if (size.compareAndSet(start, start + n)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * Resets a claimed node's fields for reuse. Its visits are left alone, as they mark whether it is ready.
+     *
+     * @param node the node
+     * @param parent its parent
+     * @param move the move leading to it
+     */
+    private void init(int node, int parent, int move) {
+        this.parent[node] = parent;
+        this.move[node] = move;
+        this.count[node] = 0;
+        claimed.set(node, 0);
+        for (int t = 0; t < teams; ++t) {
+            wins.set(node * teams + t, 0);
+        }
+        first.set(node, NONE);
+    }
+
+    /**
+     * Marks a range of nodes as no longer in use.
+     *
+     * @param from the first node
+     * @param to the node after the last
+     */
+    private void clear(int from, int to) {
+        for (int node = from; node < to; ++node) {
+            visits.set(node, 0);
+        }
+    }
+
+    /**
+     * Orders moves by their weights, most likely first, with equal moves in a random order.
+     *
+     * @param sampler a sampler holding the weights of the moves
+     * @param random the worker's random number generator
+     * @return the indices of the moves, in order
+     */
+    private static int[] order(final Sampler sampler, Random random) {
+        List<Integer> indices = new ArrayList<Integer>(sampler.size());
+        for (int i = 0; i < sampler.size(); ++i) {
+            indices.add(i);
+        }
+        Collections.shuffle(indices, random);
+        //stable, so equal moves stay shuffled
+        Collections.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(sampler.weight(b), sampler.weight(a));
+            }
+        });
+        int[] order = new int[indices.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = indices.get(i);
+        }
+        return order;
+    }
+
+    /**
+     * @param a a positive integer
+     * @param b a positive integer
+     * @return the greatest common divisor of the two
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+}
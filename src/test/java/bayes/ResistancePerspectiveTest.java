@@ -0,0 +1,51 @@
+package bayes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the exact posterior over the sets of spies.
+ */
+public class ResistancePerspectiveTest {
+
+    /**
+     * Carries out a mission and updates the perspective with its sabotages.
+     */
+    private static void mission(GameState state, ResistancePerspective perspective, String team, int traitors) {
+        GameState.Mission mission = new GameState.Mission(team.substring(0, 1), team);
+        mission.done(traitors);
+        state.mission(mission);
+        perspective.updateSuspicion();
+    }
+
+    @Test
+    public void provenSpiesAreCertain() {
+        GameState state = new GameState("ABCDEFG", "???");
+        ResistancePerspective perspective = new ResistancePerspective(state, "A", "ABCDEFG");
+        //leaves uneven hypotheses, whose total over the sets containing B or C rounds to just below one
+        mission(state, perspective, "BDE", 1);
+        //two sabotages on a mission of two: both are spies
+        mission(state, perspective, "BC", 2);
+        assertEquals(1.0, perspective.lookup('B').bayesSuspicion(), 0);
+        assertEquals(1.0, perspective.lookup('C').bayesSuspicion(), 0);
+        assertEquals(0.0, perspective.lookup('A').bayesSuspicion(), 0);
+        double total = 0;
+        for (ResistancePerspective.Player player : perspective.players()) {
+            total += player.bayesSuspicion();
+        }
+        assertEquals(3, total, 1e-12);
+    }
+
+    @Test
+    public void snapshotsAreCertainOfProvenSpies() {
+        GameState state = new GameState("ABCDEFG", "???");
+        ResistancePerspective perspective = new ResistancePerspective(state, "A", "ABCDEFG");
+        mission(state, perspective, "BDE", 1);
+        double[] suspicions = perspective.snapshot().suspicions("BC", 2);
+        assertEquals(0.0, suspicions[0], 0);
+        assertEquals(1.0, suspicions[1], 0);
+        assertEquals(1.0, suspicions[2], 0);
+    }
+
+}
@@ -0,0 +1,110 @@
+package search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the aggregated chance moves against the sequential moves they stand for.
+ */
+public class CompactGameStateTest {
+
+    /**
+     * @return a seven player game from a spy's perspective, with the third player about to nominate a team for the
+     *         second mission and uneven suspicions from the first
+     */
+    private static CompactGameState state() {
+        CompactGameState state = new CompactGameState("ABCDEFG", "ACE", 'A');
+        state.aggregate(false);
+        state.update("BCD", 1);
+        state.round(2);
+        state.phase(GameState.Phase.NOMINATION);
+        state.currentLeader(2);
+        state.currentPlayer(2);
+        return state;
+    }
+
+    /**
+     * @return the probability of each number of yes votes (or sabotages) by the other players, from the single chance
+     *         move of an aggregated copy of the state
+     */
+    private static double[] aggregated(CompactGameState state) {
+        CompactGameState copy = (CompactGameState) state.copy();
+        copy.aggregate(true);
+        assertTrue(copy.chance());
+        Sampler sampler = new Sampler();
+        copy.weightedMoves(sampler);
+        double total = 0;
+        for (int i = 0; i < sampler.size(); ++i) {
+            total += sampler.weight(i);
+        }
+        double[] probabilities = new double[state.numPlayers()];
+        for (int i = 0; i < sampler.size(); ++i) {
+            probabilities[copy.move(i)] += sampler.weight(i) / total;
+        }
+        return probabilities;
+    }
+
+    /**
+     * Adds the probability of each number of yes votes (or sabotages) by the other players, found by going through
+     * every sequence of their single moves.
+     *
+     * @param remaining the number of players still to move
+     */
+    private static void sequential(MCTS.State state, int remaining, int count, double p, double[] probabilities) {
+        if (remaining == 0) {
+            probabilities[count] += p;
+            return;
+        }
+        Sampler sampler = new Sampler();
+        state.weightedMoves(sampler);
+        double total = 0;
+        for (int i = 0; i < sampler.size(); ++i) {
+            total += sampler.weight(i);
+        }
+        for (int i = 0; i < sampler.size(); ++i) {
+            MCTS.State next = state.copy();
+            int move = state.move(i);
+            next.apply(move);
+            sequential(next, remaining - 1, count + move, p * sampler.weight(i) / total, probabilities);
+        }
+    }
+
+    /**
+     * @return the index of the move nominating the given team
+     */
+    private static int nomination(CompactGameState state, String team) {
+        return state.encode(new ResistanceTransition.Nomination(team));
+    }
+
+    @Test
+    public void votesMatchSequentialVotes() {
+        for (String team : new String[]{"BCD", "CEF", "ACE", "CFG"}) {
+            CompactGameState state = state();
+            state.apply(nomination(state, team));
+            //my vote
+            state.apply(1);
+            double[] expected = new double[state.numPlayers()];
+            sequential(state, state.numPlayers() - 1, 0, 1, expected);
+            assertArrayEquals(team, expected, aggregated(state), 1e-12);
+        }
+    }
+
+    @Test
+    public void sabotagesMatchSequentialSabotages() {
+        for (String team : new String[]{"ACE", "ABC", "BCD", "CFG"}) {
+            CompactGameState state = state();
+            state.apply(nomination(state, team));
+            for (int i = 0; i < state.numPlayers(); ++i) {
+                state.apply(1);
+            }
+            //the mission, starting with me
+            assertEquals(0, state.currentPlayer());
+            state.apply(state.move(0));
+            double[] expected = new double[state.numPlayers()];
+            sequential(state, state.numPlayers() - 1, 0, 1, expected);
+            assertArrayEquals(team, expected, aggregated(state), 1e-12);
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package search;
 
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 /**
  * Author: Sam Marsh
  * Date: 29/10/2016
@@ -31,4 +33,46 @@ public class MCTSTest {
         System.out.println(mcts.transition());
     }
 
+    @Test
+    public void transitionSearchesAfterPonderFinishes() throws InterruptedException {
+        CompactGameState state = new CompactGameState("ABCDE", "AB", 'A');
+        MCTS mcts = new MCTS(state, 2, MCTS.Parallelism.ROOT, 1);
+        mcts.telemetry(true);
+        mcts.ponder(1000);
+        //wait for the ponder to use up its playouts and let the workers go
+        while (mcts.searching()) {
+            Thread.sleep(1);
+        }
+        long pondered = mcts.telemetry().playouts();
+        assertTrue(pondered >= 1000);
+
+        assertNotNull(mcts.transition(60000, 1000));
+        //the search carries on rather than returning the pondered move straight away
+        assertTrue(mcts.telemetry().playouts() > pondered);
+        mcts.shutdown();
+    }
+
+    @Test
+    public void telemetryCountsThePonderADecisionCarriesOn() throws InterruptedException {
+        CompactGameState state = new CompactGameState("ABCDE", "AB", 'A');
+        MCTS mcts = new MCTS(state, 2, MCTS.Parallelism.ROOT, 2);
+        mcts.telemetry(true);
+        mcts.ponder(500);
+        while (mcts.searching()) {
+            Thread.sleep(1);
+        }
+        Telemetry pondered = mcts.telemetry();
+        assertTrue(pondered.playouts() >= 500);
+
+        assertNotNull(mcts.transition(60000, 500));
+        Telemetry decided = mcts.telemetry();
+        assertTrue(decided.playouts() > pondered.playouts());
+        assertTrue(decided.elapsed() >= pondered.elapsed());
+        //the simulation time splits into weighting the moves and applying them
+        assertTrue(decided.weightsTime() > 0);
+        assertTrue(decided.updateTime() > 0);
+        assertTrue(decided.weightsTime() + decided.updateTime() <= decided.simulateTime());
+        mcts.shutdown();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package search;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests sampling indices in proportion to their weights.
+ */
+public class SamplerTest {
+
+    //the number of samples taken when checking proportions
+    private static final int SAMPLES = 200000;
+
+    /**
+     * @return how often each index was picked, as a fraction of the samples
+     */
+    private static double[] frequencies(Sampler sampler, Random random) {
+        double[] frequencies = new double[sampler.size()];
+        for (int i = 0; i < SAMPLES; ++i) {
+            frequencies[sampler.sample(random)] += 1.0 / SAMPLES;
+        }
+        return frequencies;
+    }
+
+    @Test
+    public void samplesInProportionToWeights() {
+        Sampler sampler = new Sampler();
+        double[] weights = {1, 0, 3, 6};
+        for (double weight : weights) {
+            sampler.add(weight);
+        }
+        assertEquals(weights.length, sampler.size());
+        for (int i = 0; i < weights.length; ++i) {
+            assertEquals(weights[i], sampler.weight(i), 0);
+        }
+        assertArrayEquals(new double[]{0.1, 0, 0.3, 0.6}, frequencies(sampler, new SplitMix(1)), 0.01);
+    }
+
+    @Test
+    public void growsPastItsInitialStorage() {
+        Sampler sampler = new Sampler();
+        for (int i = 0; i < 100; ++i) {
+            sampler.add(i == 70 ? 1 : 0);
+        }
+        assertEquals(100, sampler.size());
+        assertEquals(1, sampler.weight(70), 0);
+        assertEquals(70, sampler.sample(new SplitMix(1)));
+    }
+
+    @Test
+    public void uniformWeighsEveryIndexTheSame() {
+        Sampler sampler = new Sampler();
+        sampler.add(5);
+        sampler.uniform(4);
+        assertEquals(4, sampler.size());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(1, sampler.weight(i), 0);
+        }
+        assertArrayEquals(new double[]{0.25, 0.25, 0.25, 0.25}, frequencies(sampler, new SplitMix(2)), 0.01);
+    }
+
+    @Test
+    public void allZeroWeightsPickTheLastIndex() {
+        Sampler sampler = new Sampler();
+        sampler.add(0);
+        sampler.add(0);
+        sampler.add(0);
+        assertEquals(2, sampler.sample(new SplitMix(3)));
+    }
+
+    @Test
+    public void sharedTotalsAreNeverWritten() {
+        double[] totals = Sampler.accumulate(new double[]{2, 0, 2});
+        assertArrayEquals(new double[]{2, 2, 4}, totals, 0);
+
+        Sampler sampler = new Sampler();
+        sampler.totals(totals);
+        assertEquals(3, sampler.size());
+        assertEquals(0, sampler.weight(1), 0);
+        assertArrayEquals(new double[]{0.5, 0, 0.5}, frequencies(sampler, new SplitMix(4)), 0.01);
+
+        //refilling the sampler must go to its own storage, not the shared totals
+        sampler.clear();
+        sampler.add(7);
+        sampler.add(1);
+        assertEquals(2, sampler.size());
+        assertEquals(1, sampler.weight(1), 0);
+        assertArrayEquals(new double[]{2, 2, 4}, totals, 0);
+    }
+
+}
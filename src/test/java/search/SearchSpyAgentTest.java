@@ -0,0 +1,28 @@
+package search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the spy agent keeps its searcher in step with the game.
+ */
+public class SearchSpyAgentTest {
+
+    @Test
+    public void proposedMissionCorrectsTheSearchersLeader() {
+        SearchSpyAgent agent = new SearchSpyAgent(1);
+        agent.ponder(0);
+        agent.get_status("A", "ABCDE", "AB", 1, 0);
+        //the searcher starts from the first player as leader, but the third nominates
+        assertEquals(0, agent.searcher().state().currentPlayer());
+        agent.get_ProposedMission("C", "DC");
+        try {
+            //equal states have the same leader
+            assertEquals(agent.state(), agent.searcher().state());
+        } finally {
+            agent.searcher().shutdown();
+        }
+    }
+
+}
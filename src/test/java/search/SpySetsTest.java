@@ -0,0 +1,149 @@
+package search;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Bayesian suspicion updates against the per-player update they replaced.
+ */
+public class SpySetsTest {
+
+    //the number of spies in games of 5-10 players
+    private static final int[] SPIES = {2, 2, 3, 3, 3, 4};
+
+    /**
+     * The per-player update: for each player, the probability of the sabotages given that they are a spy is found by
+     * going through every set of spies, and every choice of which spies on the mission sabotaged.
+     */
+    private static double[] reference(double[] suspicion, int players, int spies, int mission, int traitors) {
+        double[] updated = new double[players];
+        double total = 0;
+        for (int id = 0; id < players; ++id) {
+            double[] given = suspicion.clone();
+            given[id] = 1.0;
+            double pba = 0;
+            for (int set = 0; set < 1 << players; ++set) {
+                if (Integer.bitCount(set) != spies) {
+                    continue;
+                }
+                double prior = 1;
+                for (int i = 0; i < players; ++i) {
+                    prior *= (set & (1 << i)) != 0 ? given[i] : 1 - given[i];
+                }
+                int onMission = Integer.bitCount(set & mission);
+                double likelihood = 0;
+                for (int sabotaged = 0; sabotaged < 1 << onMission; ++sabotaged) {
+                    if (Integer.bitCount(sabotaged) == traitors) {
+                        double betray = 0.95 / onMission;
+                        likelihood += Math.pow(betray, traitors) * Math.pow(1 - betray, onMission - traitors);
+                    }
+                }
+                pba += prior * likelihood;
+            }
+            updated[id] = suspicion[id] == 0 ? 0 : suspicion[id] * pba;
+            total += updated[id];
+        }
+        for (int id = 0; id < players; ++id) {
+            updated[id] = Math.max(0, Math.min(updated[id] * spies / total, 1));
+        }
+        return updated;
+    }
+
+    /**
+     * @return a random mission of three players
+     */
+    private static int mission(Random random, int players) {
+        int mission = 0;
+        while (Integer.bitCount(mission) < 3) {
+            mission |= 1 << random.nextInt(players);
+        }
+        return mission;
+    }
+
+    @Test
+    public void updateMatchesPerPlayerUpdate() {
+        Random random = new SplitMix(1);
+        for (int t = 0; t < 300; ++t) {
+            int players = 5 + t % 6;
+            int spies = SPIES[players - 5];
+            double[] suspicion = new double[players];
+            for (int i = 0; i < players; ++i) {
+                suspicion[i] = random.nextDouble() * 0.9;
+            }
+            //a resistance member doesn't suspect themselves
+            suspicion[random.nextInt(players)] = 0;
+            int mission = mission(random, players);
+            int traitors = random.nextInt(Math.min(3, spies) + 1);
+
+            double[] expected = reference(suspicion, players, spies, mission, traitors);
+            double[] actual = suspicion.clone();
+            SpySets.update(actual, 0, players, spies, mission, traitors);
+            assertArrayEquals(expected, actual, 1e-12);
+        }
+    }
+
+    @Test
+    public void updateSumsToSpiesAndClearsInnocents() {
+        double[] suspicion = {0, 0.5, 0.5, 0.5, 0.5};
+        //a mission of me and player 1 which is sabotaged - player 1 must be a spy
+        SpySets.update(suspicion, 0, 5, 2, 0x3, 1);
+        assertEquals(0, suspicion[0], 0);
+        assertEquals(1, suspicion[1], 1e-12);
+        assertEquals(2, suspicion[0] + suspicion[1] + suspicion[2] + suspicion[3] + suspicion[4], 1e-12);
+    }
+
+    @Test
+    public void batchedUpdateGrowsPastTheLargestGame() {
+        Random random = new SplitMix(3);
+        int players = 10;
+        int rows = 12;
+        double[] suspicion = new double[rows * players];
+        for (int i = 0; i < suspicion.length; ++i) {
+            suspicion[i] = random.nextDouble() * 0.9;
+        }
+        double[] expected = suspicion.clone();
+        for (int r = 0; r < rows; ++r) {
+            SpySets.update(expected, r * players, 1, players, 4, 0x7, 1);
+        }
+        SpySets.update(suspicion, 0, rows, players, 4, 0x7, 1);
+        assertArrayEquals(expected, suspicion, 0);
+    }
+
+    @Test
+    public void batchedUpdateMatchesRowByRow() {
+        Random random = new SplitMix(2);
+        for (int t = 0; t < 300; ++t) {
+            int players = 5 + t % 6;
+            int spies = SPIES[players - 5];
+            int rows = 1 + random.nextInt(players);
+            //rows start after some unrelated values, which must be left alone
+            int offset = random.nextInt(3);
+            double[] suspicion = new double[offset + rows * players];
+            for (int i = 0; i < suspicion.length; ++i) {
+                suspicion[i] = random.nextDouble() * 0.9;
+            }
+            int mission = mission(random, players);
+            int traitors = random.nextInt(Math.min(3, spies) + 1);
+
+            double[] expected = suspicion.clone();
+            for (int r = 0; r < rows; ++r) {
+                SpySets.update(expected, offset + r * players, 1, players, spies, mission, traitors);
+            }
+            double[] actual = suspicion.clone();
+            SpySets.update(actual, offset, rows, players, spies, mission, traitors);
+            //the same arithmetic in the same order, so bit-for-bit identical
+            assertArrayEquals(expected, actual, 0);
+            for (int r = 0; r < rows; ++r) {
+                double[] row = new double[players];
+                System.arraycopy(suspicion, offset + r * players, row, 0, players);
+                double[] updated = new double[players];
+                System.arraycopy(actual, offset + r * players, updated, 0, players);
+                assertArrayEquals(reference(row, players, spies, mission, traitors), updated, 1e-12);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the tables of teams a leader may nominate.
+ */
+public class TeamsTest {
+
+    @Test
+    public void enumeratesEveryTeamContainingTheLeader() {
+        for (int players = 5; players <= 10; ++players) {
+            for (int round = 1; round <= 5; ++round) {
+                int size = Teams.size(players, round);
+                for (int leader = 0; leader < players; ++leader) {
+                    int[] teams = Teams.of(players, round, leader);
+                    assertEquals(Teams.binomial(players - 1, size - 1), teams.length);
+                    for (int i = 0; i < teams.length; ++i) {
+                        assertEquals(size, Integer.bitCount(teams[i]));
+                        assertTrue((teams[i] & (1 << leader)) != 0);
+                        assertTrue(teams[i] < 1 << players);
+                        //increasing, so no team appears twice
+                        assertTrue(i == 0 || teams[i - 1] < teams[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tablesAreShared() {
+        assertSame(Teams.of(7, 3, 2), Teams.of(7, 3, 2));
+    }
+
+    @Test
+    public void nextCombinationKeepsTheBitCount() {
+        int count = 0;
+        for (int x = 0x7; x < 1 << 8; x = Teams.nextCombination(x)) {
+            assertEquals(3, Integer.bitCount(x));
+            ++count;
+        }
+        assertEquals(Teams.binomial(8, 3), count);
+        assertEquals(56, count);
+    }
+
+}
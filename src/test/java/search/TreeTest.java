@@ -0,0 +1,263 @@
+package search;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the node pool: lazy expansion, claiming and moving the root down.
+ */
+public class TreeTest {
+
+    /**
+     * @return a state in which a resistance leader nominates, with uneven suspicions so that the moves at the root and
+     *         below it have different priors
+     */
+    private static CompactGameState state() {
+        CompactGameState state = new CompactGameState("ABCDE", "AB", 'A');
+        state.aggregate(true);
+        state.update("BC", 1);
+        state.round(2);
+        state.phase(GameState.Phase.NOMINATION);
+        state.currentLeader(2);
+        state.currentPlayer(2);
+        return state;
+    }
+
+    /**
+     * Gives a child of an expanded node, as the search would: claiming the next one, or drawing an outcome at a
+     * chance node.
+     */
+    private static int child(Tree tree, int node, MCTS.State state) {
+        return state.chance() ? tree.outcome(node, 0, state) : tree.claim(node, state);
+    }
+
+    @Test
+    public void advanceKeepsPriorsOfUnvisitedChildren() {
+        SplitMix random = new SplitMix(1);
+        Sampler sampler = new Sampler();
+        Tree tree = new Tree(1 << 12, 2);
+        tree.policy(new SelectionPolicy.PUCT(1));
+        MCTS.State state = state();
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, random, sampler));
+        int node = child(tree, Tree.ROOT, state);
+        MCTS.State next = state.copy();
+        next.apply(tree.move(node));
+        assertTrue(tree.expand(node, next, random, sampler));
+        int visited = child(tree, node, next);
+        assertNotEquals(Tree.NONE, visited);
+
+        int n = next.moves();
+        double[] priors = new double[n];
+        boolean moved = false;
+        for (int c = 0; c < n; ++c) {
+            priors[c] = tree.prior(tree.first(node) + c);
+            //the block only tests anything if it lands on slots which held different priors
+            moved |= priors[c] != tree.prior(1 + c);
+        }
+        assertTrue(moved);
+
+        assertTrue(tree.advance(tree.move(node)));
+        assertEquals(Tree.ROOT + 1, tree.first(Tree.ROOT));
+        for (int c = 0; c < n; ++c) {
+            assertEquals(priors[c], tree.prior(tree.first(Tree.ROOT) + c), 0);
+        }
+    }
+
+    @Test
+    public void advanceKeepsTheSubtreeOfTheMoveTaken() {
+        SplitMix random = new SplitMix(2);
+        Sampler sampler = new Sampler();
+        Tree tree = new Tree(1 << 12, 2);
+        MCTS.State state = state();
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, random, sampler));
+        int kept = tree.claim(Tree.ROOT, state);
+        int other = tree.claim(Tree.ROOT, state);
+        tree.backPropagate(other, 1);
+        MCTS.State next = state.copy();
+        next.apply(tree.move(kept));
+        assertTrue(tree.expand(kept, next, random, sampler));
+        int grandchild = child(tree, kept, next);
+        tree.visit(kept);
+        tree.backPropagate(grandchild, 0);
+        int children = next.moves();
+        int position = grandchild - tree.first(kept);
+        int move = tree.move(grandchild);
+        int visits = tree.visits(grandchild);
+        double value = tree.value(grandchild);
+
+        assertTrue(tree.advance(tree.move(kept)));
+        //the new root and its block of children, with the rest recycled
+        assertEquals(1 + children, tree.size());
+        assertEquals(2, tree.visits(Tree.ROOT));
+        assertEquals(Tree.ROOT + 1, tree.first(Tree.ROOT));
+        int moved = tree.first(Tree.ROOT) + position;
+        assertEquals(move, tree.move(moved));
+        assertEquals(visits, tree.visits(moved));
+        assertEquals(value, tree.value(moved), 0);
+    }
+
+    @Test
+    public void advanceByAnUnvisitedMoveEmptiesTheTree() {
+        Tree tree = new Tree(1 << 12, 2);
+        MCTS.State state = state();
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(3), new Sampler()));
+        assertFalse(tree.advance(state.move(0)));
+        assertTrue(tree.empty());
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void fullPoolStopsExpansion() {
+        MCTS.State state = state();
+        Tree tree = new Tree(state.moves(), 2);
+        tree.reset(state);
+        //the root takes one node, leaving no room for a block of all its children
+        assertFalse(tree.expand(Tree.ROOT, state, new SplitMix(4), new Sampler()));
+        assertEquals(Tree.NONE, tree.first(Tree.ROOT));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void expandReservesChildrenWithoutCreatingThem() {
+        Tree tree = new Tree(1 << 12, 2);
+        MCTS.State state = state();
+        tree.reset(state);
+        int moves = state.moves();
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(5), new Sampler()));
+        assertEquals(1 + moves, tree.size());
+        assertEquals(0, tree.claimed(Tree.ROOT));
+        for (int c = 0; c < moves; ++c) {
+            assertEquals(0, tree.visits(tree.first(Tree.ROOT) + c));
+        }
+        //expanding again changes nothing
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(6), new Sampler()));
+        assertEquals(1 + moves, tree.size());
+    }
+
+    @Test
+    public void claimHandsOutEveryMoveOnce() {
+        Tree tree = new Tree(1 << 12, 2);
+        MCTS.State state = state();
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(7), new Sampler()));
+        int moves = state.moves();
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < moves; ++i) {
+            expected.add(state.move(i));
+        }
+        Set<Integer> claimed = new HashSet<Integer>();
+        for (int c = 0; c < moves; ++c) {
+            int child = tree.claim(Tree.ROOT, state);
+            //the claimed children are a prefix of the block
+            assertEquals(tree.first(Tree.ROOT) + c, child);
+            assertEquals(c + 1, tree.claimed(Tree.ROOT));
+            assertEquals(1, tree.visits(child));
+            assertTrue(claimed.add(tree.move(child)));
+        }
+        assertEquals(expected, claimed);
+        assertEquals(Tree.NONE, tree.claim(Tree.ROOT, state));
+        assertEquals(moves, tree.claimed(Tree.ROOT));
+    }
+
+    @Test
+    public void wideningLimitsClaimsByVisits() {
+        Tree tree = new Tree(1 << 12, 2);
+        tree.widening(2, 0.5);
+        MCTS.State state = state();
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(8), new Sampler()));
+        //a root with 4 visits may have 2 * 4^0.5 children
+        for (int i = 0; i < 4; ++i) {
+            tree.visit(Tree.ROOT);
+        }
+        for (int c = 0; c < 4; ++c) {
+            assertNotEquals(Tree.NONE, tree.claim(Tree.ROOT, state));
+        }
+        assertEquals(Tree.NONE, tree.claim(Tree.ROOT, state));
+        tree.visit(Tree.ROOT);
+        assertNotEquals(Tree.NONE, tree.claim(Tree.ROOT, state));
+    }
+
+    @Test
+    public void chanceChildrenAreCreatedByOutcome() {
+        Tree tree = new Tree(1 << 12, 2);
+        CompactGameState state = state();
+        //nominate, then vote, leaving the other players' votes to chance
+        state.apply(state.move(0));
+        state.apply(1);
+        assertTrue(state.chance());
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, new SplitMix(9), new Sampler()));
+        int moves = state.moves();
+        assertEquals(moves, tree.claimed(Tree.ROOT));
+        int child = tree.outcome(Tree.ROOT, moves - 1, state);
+        assertEquals(tree.first(Tree.ROOT) + moves - 1, child);
+        assertEquals(state.move(moves - 1), tree.move(child));
+        assertEquals(1, tree.visits(child));
+        assertEquals(0, tree.visits(tree.first(Tree.ROOT)));
+        //drawing the same outcome again visits the same child
+        assertEquals(child, tree.outcome(Tree.ROOT, moves - 1, state));
+        assertEquals(2, tree.visits(child));
+    }
+
+    @Test
+    public void transposedNodesReadTheSharedStatistics() {
+        SplitMix random = new SplitMix(10);
+        Sampler sampler = new Sampler();
+        Tree tree = new Tree(1 << 12, 2);
+        tree.policy(new SelectionPolicy.PUCT(0));
+        tree.transpositions(new Transpositions(1 << 8, 2));
+        CompactGameState state = state();
+        //nominate, then let the first two players vote one at a time
+        state.aggregate(false);
+        state.apply(state.move(0));
+        tree.reset(state);
+        assertTrue(tree.expand(Tree.ROOT, state, random, sampler));
+        int[] votes = new int[2];
+        MCTS.State[] voted = new MCTS.State[2];
+        for (int i = 0; i < 2; ++i) {
+            votes[i] = tree.claim(Tree.ROOT, state);
+            voted[i] = state.copy();
+            voted[i].apply(tree.move(votes[i]));
+            assertTrue(tree.expand(votes[i], voted[i], random, sampler));
+        }
+        int team = voted[0].team(voted[0].currentPlayer());
+        //a yes then a no reaches the same state as a no then a yes
+        int[] swapped = new int[2];
+        long[] keys = new long[2];
+        for (int i = 0; i < 2; ++i) {
+            int other = tree.move(votes[1 - i]);
+            MCTS.State next = voted[i].copy();
+            next.apply(other);
+            keys[i] = next.key();
+            int node = tree.claim(votes[i], voted[i]);
+            if (tree.move(node) != other) {
+                node = tree.claim(votes[i], voted[i]);
+            }
+            assertEquals(other, tree.move(node));
+            swapped[i] = node;
+            //the game which claimed the node is lost, and the next, which expands it, is won
+            tree.backPropagate(node, 1 - team);
+            tree.visit(node);
+            assertTrue(tree.expand(node, next, random, sampler));
+            tree.backPropagate(node, team);
+        }
+        assertEquals(keys[0], keys[1]);
+        for (int g = 0; g < 3; ++g) {
+            tree.visit(swapped[0]);
+            tree.backPropagate(swapped[0], team);
+        }
+        //seven games reached the state, five of them won - every one of them counts, through either node
+        assertEquals(2, tree.visits(swapped[1]));
+        assertEquals(5.0 / 7, tree.value(swapped[1]), 1e-12);
+        assertEquals(5.0 / 7, tree.value(swapped[0]), 1e-12);
+    }
+
+}